@@ -0,0 +1,156 @@
+package com.jt.ecs.api;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs registry calls on virtual threads, with at most maxConcurrency of them inside the delegate at a
+// time. Up to maxQueueDepth more wait for a permit; anything beyond that, or a call that waits longer
+// than maxQueueWait, fails with RegistryOverloadedException instead of piling up threads and connections.
+public class AsyncRegistry<D> implements AutoCloseable {
+    private final Registry<D> delegate;
+    private final int maxConcurrency;
+    private final int maxQueueDepth;
+    private final long maxQueueWaitNanos;
+    private final Semaphore permits;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private AsyncRegistry(Builder<D> builder) {
+        this.delegate = builder.delegate;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.maxQueueDepth = builder.maxQueueDepth;
+        this.maxQueueWaitNanos = builder.maxQueueWait.toNanos();
+        this.permits = new Semaphore(builder.maxConcurrency, true);
+    }
+
+    public static <D> Builder<D> of(Registry<D> delegate) {
+        return new Builder<>(delegate);
+    }
+
+    public static class Builder<D> {
+        private final Registry<D> delegate;
+        private int maxConcurrency = 16;
+        private int maxQueueDepth = 1024;
+        private Duration maxQueueWait = Duration.ofSeconds(1);
+
+        public Builder(Registry<D> delegate) {
+            this.delegate = delegate;
+        }
+
+        // usually the connection pool size of the delegate's DataSource
+        public Builder<D> withMaxConcurrency(int maxConcurrency) {
+            if (maxConcurrency <= 0) {
+                throw new IllegalArgumentException("Max concurrency must be positive: " + maxConcurrency);
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        public Builder<D> withMaxQueueDepth(int maxQueueDepth) {
+            if (maxQueueDepth < 0) {
+                throw new IllegalArgumentException("Max queue depth must not be negative: " + maxQueueDepth);
+            }
+            this.maxQueueDepth = maxQueueDepth;
+            return this;
+        }
+
+        public Builder<D> withMaxQueueWait(Duration maxQueueWait) {
+            if (maxQueueWait == null || maxQueueWait.isNegative()) {
+                throw new IllegalArgumentException("Max queue wait must not be negative: " + maxQueueWait);
+            }
+            this.maxQueueWait = maxQueueWait;
+            return this;
+        }
+
+        public AsyncRegistry<D> build() {
+            return new AsyncRegistry<>(this);
+        }
+    }
+
+    public CompletableFuture<Void> execute(Transaction<D> transaction) {
+        return submit(() -> {
+            delegate.execute(transaction);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Optional<Entity<D>>> execute(Query.SingletonQuery<D> query) {
+        return submit(() -> delegate.execute(query));
+    }
+
+    public CompletableFuture<Map<Id, Entity<D>>> execute(Query.MultiQuery<D> query) {
+        return submit(() -> delegate.execute(query));
+    }
+
+    public CompletableFuture<Page<D>> execute(Query.PagedQuery<D> query) {
+        return submit(() -> delegate.execute(query));
+    }
+
+    public CompletableFuture<ChangeBatch<D>> changesSince(long cursor, List<Class<? extends D>> types, int batchSize) {
+        return submit(() -> delegate.changesSince(cursor, types, batchSize));
+    }
+
+    public AsyncRegistryStats stats() {
+        var inFlight = maxConcurrency - permits.availablePermits();
+        return new AsyncRegistryStats(inFlight, Math.max(0, pending.get() - inFlight), rejected.sum(), queueWait.snapshot());
+    }
+
+    private <R> CompletableFuture<R> submit(Callable<R> call) {
+        if (pending.incrementAndGet() > maxConcurrency + maxQueueDepth) {
+            pending.decrementAndGet();
+            rejected.increment();
+            return CompletableFuture.failedFuture(new RegistryOverloadedException("Registry queue is full: " + maxQueueDepth));
+        }
+
+        var future = new CompletableFuture<R>();
+        var enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> run(call, future, enqueuedAt));
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            future.completeExceptionally(new IllegalStateException("Registry is closed", e));
+        }
+        return future;
+    }
+
+    private <R> void run(Callable<R> call, CompletableFuture<R> future, long enqueuedAt) {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxQueueWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            // the call never reaches the delegate, the flag stays set for whoever owns the thread
+            Thread.currentThread().interrupt();
+            pending.decrementAndGet();
+            future.completeExceptionally(e);
+            return;
+        }
+        queueWait.record(System.nanoTime() - enqueuedAt);
+        if (!acquired) {
+            pending.decrementAndGet();
+            rejected.increment();
+            future.completeExceptionally(new RegistryOverloadedException("Timed out waiting for a registry permit"));
+            return;
+        }
+
+        try {
+            future.complete(call.call());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            permits.release();
+            pending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -0,0 +1,4 @@
+package com.jt.ecs.api;
+
+public record AsyncRegistryStats(int inFlight, int queued, long rejected, LatencyHistogram.Snapshot queueWait) {
+}
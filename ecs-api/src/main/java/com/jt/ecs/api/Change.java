@@ -0,0 +1,4 @@
+package com.jt.ecs.api;
+
+public record Change<T>(long sequence, Component<T> component) {
+}
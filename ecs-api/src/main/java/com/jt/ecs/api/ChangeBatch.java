@@ -0,0 +1,6 @@
+package com.jt.ecs.api;
+
+import java.util.List;
+
+public record ChangeBatch<T>(List<Change<T>> changes, long cursor) {
+}
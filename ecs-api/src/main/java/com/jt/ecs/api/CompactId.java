@@ -0,0 +1,46 @@
+package com.jt.ecs.api;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.HexFormat;
+
+// 128-bit id held in two longs with value equality, so ids work as hash keys. Ordering is unsigned
+// big-endian, the same as BINARY(16) columns compare.
+public record CompactId(long high, long low) implements Id, Comparable<CompactId> {
+    private final static VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    public static CompactId of(Id id) {
+        if (id instanceof CompactId compactId) {
+            return compactId;
+        }
+        return fromBytes(id.bytes());
+    }
+
+    public static CompactId fromBytes(byte[] bytes) {
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("Expected 16 bytes, got " + bytes.length);
+        }
+        return new CompactId((long) LONGS.get(bytes, 0), (long) LONGS.get(bytes, 8));
+    }
+
+    @Override
+    public byte[] bytes() {
+        var bytes = new byte[16];
+        LONGS.set(bytes, 0, high);
+        LONGS.set(bytes, 8, low);
+        return bytes;
+    }
+
+    @Override
+    public int compareTo(CompactId other) {
+        var result = Long.compareUnsigned(high, other.high);
+        return result != 0 ? result : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public String toString() {
+        var hex = HexFormat.of();
+        return hex.toHexDigits(high) + hex.toHexDigits(low);
+    }
+}
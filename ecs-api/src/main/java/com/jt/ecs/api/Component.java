@@ -1,13 +1,120 @@
 package com.jt.ecs.api;
 
-public record Component<T> (
-        Id id,
-        Id entityId,
-        T data,
-        boolean unique
-) {
+import java.util.Objects;
+import java.util.function.Supplier;
+
+// Record-like value, except that data may be decoded lazily: a lazy component keeps the decoder and
+// its data type, runs the decoder on the first data() call and memoizes the result.
+// Version 0 adds a component of its type to the entity, version n > 0 replaces version n - 1 of it.
+public final class Component<T> {
+    private final Id id;
+    private final Id entityId;
+    private final boolean unique;
+    private final int version;
+    private final Class<?> dataType;
+    private volatile T data;
+    private Supplier<? extends T> decoder;
+
+    public Component(Id id, Id entityId, T data, boolean unique, int version) {
+        if (version < 0) {
+            throw new IllegalArgumentException("Version must not be negative: " + version);
+        }
+        this.id = id;
+        this.entityId = entityId;
+        this.data = Objects.requireNonNull(data, "data");
+        this.dataType = data.getClass();
+        this.unique = unique;
+        this.version = version;
+    }
+
+    public Component(Id id, Id entityId, T data, boolean unique) {
+        this(id, entityId, data, unique, 0);
+    }
 
     public Component(Id id, Id entityId, T data) {
         this(id, entityId, data, false);
     }
+
+    private Component(Id id, Id entityId, Class<? extends T> dataType, Supplier<? extends T> decoder, boolean unique, int version) {
+        this.id = id;
+        this.entityId = entityId;
+        this.dataType = dataType;
+        this.decoder = decoder;
+        this.unique = unique;
+        this.version = version;
+    }
+
+    public static <T> Component<T> lazy(Id id, Id entityId, Class<? extends T> dataType, Supplier<? extends T> decoder, boolean unique, int version) {
+        return new Component<>(id, entityId, dataType, decoder, unique, version);
+    }
+
+    public static <T> Component<T> lazy(Id id, Id entityId, Class<? extends T> dataType, Supplier<? extends T> decoder, boolean unique) {
+        return lazy(id, entityId, dataType, decoder, unique, 0);
+    }
+
+    // the write that replaces this component, it conflicts when another write replaced it first.
+    // Take the component from Entity.componentOrNull to get one typed as the registry's data.
+    public Component<T> nextVersion(Id id, T data) {
+        return new Component<>(id, entityId, data, unique, version + 1);
+    }
+
+    public Id id() {
+        return id;
+    }
+
+    public Id entityId() {
+        return entityId;
+    }
+
+    public T data() {
+        var result = data;
+        if (result == null) {
+            synchronized (this) {
+                result = data;
+                if (result == null) {
+                    result = decoder.get();
+                    data = result;
+                    decoder = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    // the runtime class of data(), known without decoding
+    public Class<?> dataType() {
+        return dataType;
+    }
+
+    public boolean unique() {
+        return unique;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public boolean isDecoded() {
+        return data != null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Component<?> other
+                && unique == other.unique
+                && version == other.version
+                && Objects.equals(id, other.id)
+                && Objects.equals(entityId, other.entityId)
+                && Objects.equals(data(), other.data());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, entityId, data(), unique, version);
+    }
+
+    @Override
+    public String toString() {
+        return "Component[id=" + id + ", entityId=" + entityId + ", data=" + data() + ", unique=" + unique + ", version=" + version + "]";
+    }
 }
@@ -0,0 +1,14 @@
+package com.jt.ecs.api;
+
+import java.nio.ByteBuffer;
+
+// Binary form of component data for stores that keep bytes rather than JSON. The type identifies the
+// data class across restarts, so it must stay stable once data was written with it.
+public interface ComponentCodec<D> {
+    int type(D data);
+
+    byte[] encode(D data);
+
+    // data holds exactly the encoded bytes, between its position and limit
+    D decode(int type, ByteBuffer data);
+}
@@ -0,0 +1,43 @@
+package com.jt.ecs.api;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// The session of a registry that holds nothing between calls, every call goes straight to it
+final class DelegatingSession<D> implements Session<D> {
+    private final Registry<D> registry;
+
+    DelegatingSession(Registry<D> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void execute(Transaction<D> transaction) {
+        registry.execute(transaction);
+    }
+
+    @Override
+    public Optional<Entity<D>> execute(Query.SingletonQuery<D> query) {
+        return registry.execute(query);
+    }
+
+    @Override
+    public Map<Id, Entity<D>> execute(Query.MultiQuery<D> query) {
+        return registry.execute(query);
+    }
+
+    @Override
+    public Page<D> execute(Query.PagedQuery<D> query) {
+        return registry.execute(query);
+    }
+
+    @Override
+    public ChangeBatch<D> changesSince(long cursor, List<Class<? extends D>> types, int batchSize) {
+        return registry.changesSince(cursor, types, batchSize);
+    }
+
+    @Override
+    public void close() {
+    }
+}
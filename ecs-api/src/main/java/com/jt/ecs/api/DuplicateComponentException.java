@@ -1,6 +1,10 @@
 package com.jt.ecs.api;
 
 public class DuplicateComponentException extends DuplicateEntryException {
+    public DuplicateComponentException(String message) {
+        super(message);
+    }
+
     public DuplicateComponentException(Throwable cause) {
         super(cause);
     }
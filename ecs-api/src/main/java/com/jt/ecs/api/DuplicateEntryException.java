@@ -1,6 +1,10 @@
 package com.jt.ecs.api;
 
 public class DuplicateEntryException extends RuntimeException {
+    public DuplicateEntryException(String message) {
+        super(message);
+    }
+
     public DuplicateEntryException(Throwable cause) {
         super(cause);
     }
@@ -1,6 +1,10 @@
 package com.jt.ecs.api;
 
 public class DuplicateUniqueDataException extends DuplicateEntryException {
+    public DuplicateUniqueDataException(String message) {
+        super(message);
+    }
+
     public DuplicateUniqueDataException(Throwable cause) {
         super(cause);
     }
@@ -1,19 +1,92 @@
 package com.jt.ecs.api;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 
-public record Entity<T>(Id id, List<Component<T>> componentList) {
+// Record-like value whose components are indexed by data type on first lookup, so every
+// accessor is a single map access. The *OrNull accessors avoid Optional on hot paths.
+public final class Entity<T> {
+    private final Id id;
+    private final List<Component<T>> componentList;
+    private volatile Map<Class<?>, Component<T>> byType;
+
+    public Entity(Id id, List<Component<T>> componentList) {
+        this.id = id;
+        this.componentList = componentList;
+    }
+
+    public Id id() {
+        return id;
+    }
+
+    public List<Component<T>> componentList() {
+        return componentList;
+    }
+
+    private Map<Class<?>, Component<T>> byType() {
+        var index = byType;
+        if (index == null) {
+            index = new HashMap<>((int) (componentList.size() / 0.75f) + 1);
+            for (var component : componentList) {
+                index.putIfAbsent(component.dataType(), component);
+            }
+            byType = index;
+        }
+        return index;
+    }
 
     public <R extends T> Optional<Component<R>> getComponent(Class<R> type) {
-        return componentList.stream()
-                .filter(c -> c.data().getClass().equals(type))
-                .map(c -> this.safeCast(c, type))
-                .findFirst();
+        return Optional.ofNullable(getComponentOrNull(type));
+    }
+
+    public <R extends T> Component<R> getComponentOrNull(Class<R> type) {
+        var component = byType().get(type);
+        return component == null ? null : safeCast(component, type);
+    }
+
+    // the component typed as the entity's data, so its nextVersion builds a replacement a Transaction accepts
+    public Component<T> componentOrNull(Class<? extends T> type) {
+        return byType().get(type);
+    }
+
+    public <R extends T> R getDataOrNull(Class<R> type) {
+        var component = getComponentOrNull(type);
+        return component == null ? null : component.data();
+    }
+
+    public boolean hasComponent(Class<?> type) {
+        return byType().containsKey(type);
+    }
+
+    public void forEachComponent(Consumer<? super Component<T>> action) {
+        for (int i = 0; i < componentList.size(); i++) {
+            action.accept(componentList.get(i));
+        }
     }
 
     @SuppressWarnings("unchecked")
     private <R extends T> Component<R> safeCast(Component<T> component, Class<R> type) {
         return (Component<R>) component;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Entity<?> other
+                && Objects.equals(id, other.id)
+                && Objects.equals(componentList, other.componentList);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, componentList);
+    }
+
+    @Override
+    public String toString() {
+        return "Entity[id=" + id + ", componentList=" + componentList + "]";
+    }
 }
@@ -0,0 +1,53 @@
+package com.jt.ecs.api;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class HistogramRegistryMetrics implements RegistryMetrics {
+    public record OperationStats(LatencyHistogram.Snapshot latency, long rows, long payloadSize, Map<String, Long> errors) {}
+
+    private record Counters(LatencyHistogram latency, LongAdder rows, LongAdder payloadSize, ConcurrentHashMap<Class<?>, LongAdder> errors) {
+        Counters() {
+            this(new LatencyHistogram(), new LongAdder(), new LongAdder(), new ConcurrentHashMap<>());
+        }
+    }
+
+    private final EnumMap<Operation, Counters> counters = new EnumMap<>(Operation.class);
+    private final LatencyHistogram connectionAcquire = new LatencyHistogram();
+
+    public HistogramRegistryMetrics() {
+        for (var operation : Operation.values()) {
+            counters.put(operation, new Counters());
+        }
+    }
+
+    @Override
+    public void recordOperation(Operation operation, long latencyNanos, int rows, long payloadSize, Throwable error) {
+        var c = counters.get(operation);
+        c.latency().record(latencyNanos);
+        c.rows().add(rows);
+        c.payloadSize().add(payloadSize);
+        if (error != null) {
+            c.errors().computeIfAbsent(error.getClass(), k -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public void recordConnectionAcquire(long latencyNanos) {
+        connectionAcquire.record(latencyNanos);
+    }
+
+    public OperationStats stats(Operation operation) {
+        var c = counters.get(operation);
+        var errors = new TreeMap<String, Long>();
+        c.errors().forEach((type, count) -> errors.put(type.getName(), count.sum()));
+        return new OperationStats(c.latency().snapshot(), c.rows().sum(), c.payloadSize().sum(), errors);
+    }
+
+    public LatencyHistogram.Snapshot connectionAcquireStats() {
+        return connectionAcquire.snapshot();
+    }
+}
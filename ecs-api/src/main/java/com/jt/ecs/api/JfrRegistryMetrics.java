@@ -0,0 +1,100 @@
+package com.jt.ecs.api;
+
+import jdk.jfr.*;
+
+// Emits one JFR event per registry operation and connection acquisition. Events are only built
+// while a recording has them enabled, e.g. -XX:StartFlightRecording with com.jt.ecs.* enabled.
+public class JfrRegistryMetrics implements RegistryMetrics {
+
+    @Name("com.jt.ecs.RegistryOperation")
+    @Label("Registry Operation")
+    @Category({"ECS", "Registry"})
+    @StackTrace(false)
+    static class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Payload Size")
+        long payloadSize;
+
+        @Label("Error")
+        String error;
+    }
+
+    @Name("com.jt.ecs.ConnectionAcquire")
+    @Label("Connection Acquire")
+    @Category({"ECS", "Registry"})
+    @StackTrace(false)
+    static class ConnectionAcquireEvent extends Event {
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    // Events begin in operationStarted and end when recorded, so JFR's own duration and threshold settings apply.
+    // Without a started event, e.g. from a caller that only reports the latency, nothing is emitted.
+    @Override
+    public void recordOperation(Operation operation, long latencyNanos, int rows, long payloadSize, Throwable error) {
+    }
+
+    @Override
+    public void recordConnectionAcquire(long latencyNanos) {
+    }
+
+    @Override
+    public Object operationStarted(Operation operation) {
+        var event = new OperationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void recordOperation(Object started, Operation operation, long latencyNanos, int rows, long payloadSize, Throwable error) {
+        if (!(started instanceof OperationEvent event)) {
+            return;
+        }
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.operation = operation.name();
+        event.latency = latencyNanos;
+        event.rows = rows;
+        event.payloadSize = payloadSize;
+        event.error = error == null ? null : error.getClass().getName();
+        event.commit();
+    }
+
+    @Override
+    public Object connectionAcquireStarted() {
+        var event = new ConnectionAcquireEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void recordConnectionAcquire(Object started, long latencyNanos) {
+        if (!(started instanceof ConnectionAcquireEvent event)) {
+            return;
+        }
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.latency = latencyNanos;
+        event.commit();
+    }
+}
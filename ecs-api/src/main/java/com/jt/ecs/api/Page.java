@@ -0,0 +1,10 @@
+package com.jt.ecs.api;
+
+import java.util.List;
+
+// Entities of one page in entity id order. next is the cursor of the following page, null on the last one.
+public record Page<T>(List<Entity<T>> entities, Id next) {
+    public boolean hasNext() {
+        return next != null;
+    }
+}
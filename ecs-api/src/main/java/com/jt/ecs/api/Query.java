@@ -9,6 +9,22 @@ public sealed interface Query {
         record ByUniqueKey<T>(T keyData, List<Class<? extends T>> selectedTypes) implements SingletonQuery<T> {}
     }
 
+    sealed interface MultiQuery<T> extends Query {
+        record ByEntityIdsQuery<T>(List<Id> ids, List<Class<? extends T>> selectedTypes) implements MultiQuery<T> {}
+    }
+
+    // keyset paged in entity id order, after is exclusive and null for the first page
+    sealed interface PagedQuery<T> extends Query {
+        record ByIndexQuery<T>(String indexName, String key, Id after, int limit, List<Class<? extends T>> selectedTypes) implements PagedQuery<T> {
+            @Override
+            public PagedQuery<T> withAfter(Id after) {
+                return new ByIndexQuery<>(indexName, key, after, limit, selectedTypes);
+            }
+        }
+
+        PagedQuery<T> withAfter(Id after);
+    }
+
     static <T> SingletonQuery<T> byEntityId(Id id) {
         return new SingletonQuery.ByEntityIdQuery<>(id, Collections.emptyList());
     }
@@ -20,4 +36,24 @@ public sealed interface Query {
     static <T> SingletonQuery<T> byUniqueKey(T keyData) {
         return new SingletonQuery.ByUniqueKey<>(keyData, Collections.emptyList());
     }
-}
\ No newline at end of file
+
+    static <T> SingletonQuery<T> byUniqueKey(T keyData, List<Class<? extends T>> selectedTypes) {
+        return new SingletonQuery.ByUniqueKey<>(keyData, selectedTypes);
+    }
+
+    static <T> MultiQuery<T> byEntityIds(List<Id> ids) {
+        return new MultiQuery.ByEntityIdsQuery<>(ids, Collections.emptyList());
+    }
+
+    static <T> MultiQuery<T> byEntityIds(List<Id> ids, List<Class<? extends T>> selectedTypes) {
+        return new MultiQuery.ByEntityIdsQuery<>(ids, selectedTypes);
+    }
+
+    static <T> PagedQuery<T> byIndex(SecondaryIndex<T> index, String key, int limit) {
+        return new PagedQuery.ByIndexQuery<>(index.name(), key, null, limit, Collections.emptyList());
+    }
+
+    static <T> PagedQuery<T> byIndex(SecondaryIndex<T> index, String key, int limit, List<Class<? extends T>> selectedTypes) {
+        return new PagedQuery.ByIndexQuery<>(index.name(), key, null, limit, selectedTypes);
+    }
+}
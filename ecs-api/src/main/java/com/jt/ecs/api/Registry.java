@@ -1,8 +1,48 @@
 package com.jt.ecs.api;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface Registry<D> {
     void execute(Transaction<D> transaction);
     Optional<Entity<D>> execute(Query.SingletonQuery<D> query);
+    Map<Id, Entity<D>> execute(Query.MultiQuery<D> query);
+    Page<D> execute(Query.PagedQuery<D> query);
+
+    // components written after cursor in commit order, at most batchSize of them. Pass the returned
+    // cursor to the next call to keep tailing, an empty types list selects every type.
+    ChangeBatch<D> changesSince(long cursor, List<Class<? extends D>> types, int batchSize);
+
+    // close the session when done with it, registries that hold nothing between calls return one that delegates
+    default Session<D> session() {
+        return new DelegatingSession<>(this);
+    }
+
+    // every entity of the query, fetching the next page only once the current one is consumed
+    default Stream<Entity<D>> stream(Query.PagedQuery<D> query) {
+        var iterator = new Iterator<Entity<D>>() {
+            private Query.PagedQuery<D> next = query;
+            private Iterator<Entity<D>> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && next != null) {
+                    var page = Registry.this.execute(next);
+                    current = page.entities().iterator();
+                    next = page.hasNext() ? next.withAfter(page.next()) : null;
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Entity<D> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
 }
@@ -0,0 +1,119 @@
+package com.jt.ecs.api;
+
+import java.util.Arrays;
+
+public interface RegistryMetrics {
+    enum Operation {
+        TRANSACTION,
+        GROUP_COMMIT,
+        FIND_BY_ENTITY_ID,
+        FIND_BY_UNIQUE_KEY,
+        FIND_BY_ENTITY_IDS,
+        FIND_BY_INDEX,
+        CHANGES_SINCE,
+        BULK_IMPORT,
+        PRUNE
+    }
+
+    RegistryMetrics NOOP = new RegistryMetrics() {
+        @Override
+        public boolean enabled() {
+            return false;
+        }
+
+        @Override
+        public void recordOperation(Operation operation, long latencyNanos, int rows, long payloadSize, Throwable error) {
+        }
+
+        @Override
+        public void recordConnectionAcquire(long latencyNanos) {
+        }
+    };
+
+    // registries skip all clock reads and bookkeeping when this is false
+    default boolean enabled() {
+        return true;
+    }
+
+    // payloadSize is the length of the encoded component data, error is null when the operation succeeded
+    void recordOperation(Operation operation, long latencyNanos, int rows, long payloadSize, Throwable error);
+
+    void recordConnectionAcquire(long latencyNanos);
+
+    // Called right before an operation or connection acquisition, whatever it returns is handed back when it is
+    // recorded. Metrics that time the work themselves, like JFR events, start their clock here.
+    default Object operationStarted(Operation operation) {
+        return null;
+    }
+
+    default void recordOperation(Object started, Operation operation, long latencyNanos, int rows, long payloadSize, Throwable error) {
+        recordOperation(operation, latencyNanos, rows, payloadSize, error);
+    }
+
+    default Object connectionAcquireStarted() {
+        return null;
+    }
+
+    default void recordConnectionAcquire(Object started, long latencyNanos) {
+        recordConnectionAcquire(latencyNanos);
+    }
+
+    static RegistryMetrics composite(RegistryMetrics... metrics) {
+        var enabled = Arrays.stream(metrics).filter(RegistryMetrics::enabled).toList();
+        if (enabled.isEmpty()) {
+            return NOOP;
+        }
+        if (enabled.size() == 1) {
+            return enabled.getFirst();
+        }
+        return new RegistryMetrics() {
+            @Override
+            public void recordOperation(Operation operation, long latencyNanos, int rows, long payloadSize, Throwable error) {
+                for (var m : enabled) {
+                    m.recordOperation(operation, latencyNanos, rows, payloadSize, error);
+                }
+            }
+
+            @Override
+            public void recordConnectionAcquire(long latencyNanos) {
+                for (var m : enabled) {
+                    m.recordConnectionAcquire(latencyNanos);
+                }
+            }
+
+            @Override
+            public Object operationStarted(Operation operation) {
+                var started = new Object[enabled.size()];
+                for (int i = 0; i < started.length; i++) {
+                    started[i] = enabled.get(i).operationStarted(operation);
+                }
+                return started;
+            }
+
+            @Override
+            public void recordOperation(Object started, Operation operation, long latencyNanos, int rows, long payloadSize, Throwable error) {
+                var each = (Object[]) started;
+                for (int i = 0; i < each.length; i++) {
+                    enabled.get(i).recordOperation(each[i], operation, latencyNanos, rows, payloadSize, error);
+                }
+            }
+
+            @Override
+            public Object connectionAcquireStarted() {
+                var started = new Object[enabled.size()];
+                for (int i = 0; i < started.length; i++) {
+                    started[i] = enabled.get(i).connectionAcquireStarted();
+                }
+                return started;
+            }
+
+            @Override
+            public void recordConnectionAcquire(Object started, long latencyNanos) {
+                var each = (Object[]) started;
+                for (int i = 0; i < each.length; i++) {
+                    enabled.get(i).recordConnectionAcquire(each[i], latencyNanos);
+                }
+            }
+        };
+    }
+}
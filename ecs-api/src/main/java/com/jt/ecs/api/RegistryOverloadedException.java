@@ -0,0 +1,7 @@
+package com.jt.ecs.api;
+
+public class RegistryOverloadedException extends RuntimeException {
+    public RegistryOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,39 @@
+package com.jt.ecs.api;
+
+import java.util.function.Function;
+
+// Non-unique index over one component type. The key function runs when a component is written and again
+// when a match is read, so entries that no longer match the entity's current component are skipped.
+public final class SecondaryIndex<T> {
+    private final String name;
+    private final Class<? extends T> type;
+    private final Function<T, String> key;
+
+    private SecondaryIndex(String name, Class<? extends T> type, Function<T, String> key) {
+        this.name = name;
+        this.type = type;
+        this.key = key;
+    }
+
+    public static <T, C extends T> SecondaryIndex<T> of(String name, Class<C> type, Function<? super C, String> key) {
+        return new SecondaryIndex<>(name, type, data -> type.isInstance(data) ? key.apply(type.cast(data)) : null);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Class<? extends T> type() {
+        return type;
+    }
+
+    // null when the data is of another type or has no key
+    public String keyOf(T data) {
+        return key.apply(data);
+    }
+
+    @Override
+    public String toString() {
+        return "SecondaryIndex[name=" + name + ", type=" + type.getName() + "]";
+    }
+}
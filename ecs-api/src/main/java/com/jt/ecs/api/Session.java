@@ -0,0 +1,9 @@
+package com.jt.ecs.api;
+
+// A unit of work against one registry, e.g. the reads and the final write of one request. Calls made
+// through it may share resources such as a database connection, which stay held until it is closed.
+// Not thread safe, a session belongs to one caller at a time.
+public interface Session<D> extends Registry<D>, AutoCloseable {
+    @Override
+    void close();
+}
@@ -2,6 +2,8 @@ package com.jt.ecs.api;
 
 import java.util.List;
 
+// The components are written atomically. A component with version n > 0 is an update that only applies
+// while version n - 1 is the entity's current component of that type, see Component.nextVersion.
 public interface Transaction<T> {
     List<Component<T>> execute();
 }
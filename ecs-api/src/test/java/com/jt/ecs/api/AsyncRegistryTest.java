@@ -0,0 +1,120 @@
+package com.jt.ecs.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncRegistryTest {
+
+    // blocks every query until released and tracks how many run at once
+    static class BlockingRegistry implements Registry<String> {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public void execute(Transaction<String> transaction) {
+            transaction.execute();
+        }
+
+        @Override
+        public Optional<Entity<String>> execute(Query.SingletonQuery<String> query) {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            return Optional.empty();
+        }
+
+        @Override
+        public Map<Id, Entity<String>> execute(Query.MultiQuery<String> query) {
+            return Map.of();
+        }
+
+        @Override
+        public Page<String> execute(Query.PagedQuery<String> query) {
+            return new Page<>(List.of(), null);
+        }
+
+        @Override
+        public ChangeBatch<String> changesSince(long cursor, List<Class<? extends String>> types, int batchSize) {
+            return new ChangeBatch<>(List.of(), cursor);
+        }
+    }
+
+    @Test
+    public void testLimitsConcurrencyAndRejectsWhenFull() {
+        var delegate = new BlockingRegistry();
+        try (var registry = AsyncRegistry.of(delegate)
+                .withMaxConcurrency(2)
+                .withMaxQueueDepth(3)
+                .withMaxQueueWait(Duration.ofSeconds(10))
+                .build()) {
+            var futures = new ArrayList<CompletableFuture<Optional<Entity<String>>>>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(registry.execute(Query.byEntityId(() -> new byte[16])));
+            }
+            var rejected = registry.execute(Query.byEntityId(() -> new byte[16]));
+            var failure = assertThrows(CompletionException.class, rejected::join);
+            assertInstanceOf(RegistryOverloadedException.class, failure.getCause());
+            assertEquals(1, registry.stats().rejected());
+
+            delegate.release.countDown();
+            futures.forEach(CompletableFuture::join);
+            assertEquals(2, delegate.maxRunning.get());
+            assertEquals(0, registry.stats().inFlight());
+            assertEquals(5, registry.stats().queueWait().count());
+        }
+    }
+
+    @Test
+    public void testRejectsAfterMaxQueueWait() {
+        var delegate = new BlockingRegistry();
+        try (var registry = AsyncRegistry.of(delegate)
+                .withMaxConcurrency(1)
+                .withMaxQueueWait(Duration.ofMillis(20))
+                .build()) {
+            var blocked = registry.execute(Query.byEntityId(() -> new byte[16]));
+            var timedOut = registry.execute(Query.byEntityId(() -> new byte[16]));
+
+            var failure = assertThrows(CompletionException.class, timedOut::join);
+            assertInstanceOf(RegistryOverloadedException.class, failure.getCause());
+            delegate.release.countDown();
+            assertTrue(blocked.join().isEmpty());
+            assertEquals(0, registry.stats().queued());
+        }
+    }
+
+    @Test
+    public void testPropagatesDelegateFailures() {
+        try (var registry = AsyncRegistry.of(new BlockingRegistry()).build()) {
+            var future = registry.execute(() -> {
+                throw new DuplicateUniqueDataException("duplicate");
+            });
+            var failure = assertThrows(CompletionException.class, future::join);
+            assertInstanceOf(DuplicateUniqueDataException.class, failure.getCause());
+        }
+    }
+
+    @Test
+    public void testRejectsInvalidMaxQueueWait() {
+        var builder = AsyncRegistry.of(new BlockingRegistry());
+        assertThrows(IllegalArgumentException.class, () -> builder.withMaxQueueWait(null));
+        assertThrows(IllegalArgumentException.class, () -> builder.withMaxQueueWait(Duration.ofMillis(-1)));
+        builder.withMaxQueueWait(Duration.ZERO);
+    }
+}
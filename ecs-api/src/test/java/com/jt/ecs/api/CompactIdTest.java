@@ -0,0 +1,40 @@
+package com.jt.ecs.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactIdTest {
+
+    @Test
+    public void testBytesRoundTrip() {
+        var bytes = HexFormat.of().parseHex("019c85f0d3897c468d10a9f0e3ddb237");
+        var id = CompactId.fromBytes(bytes);
+
+        assertEquals(0x019c85f0d3897c46L, id.high());
+        assertEquals(0x8d10a9f0e3ddb237L, id.low());
+        assertArrayEquals(bytes, id.bytes());
+        assertEquals("019c85f0d3897c468d10a9f0e3ddb237", id.toString());
+    }
+
+    @Test
+    public void testValueEquality() {
+        var bytes = HexFormat.of().parseHex("019c85f0d3897c468d10a9f0e3ddb237");
+        Id other = () -> bytes.clone();
+
+        assertEquals(CompactId.fromBytes(bytes), CompactId.of(other));
+        assertEquals(CompactId.fromBytes(bytes).hashCode(), CompactId.of(other).hashCode());
+        assertThrows(IllegalArgumentException.class, () -> CompactId.fromBytes(new byte[8]));
+    }
+
+    @Test
+    public void testOrderingMatchesUnsignedBytes() {
+        var small = CompactId.fromBytes(HexFormat.of().parseHex("7fffffffffffffffffffffffffffffff"));
+        var large = CompactId.fromBytes(HexFormat.of().parseHex("80000000000000000000000000000000"));
+
+        assertTrue(small.compareTo(large) < 0);
+        assertTrue(new CompactId(1, -1).compareTo(new CompactId(1, 1)) > 0);
+    }
+}
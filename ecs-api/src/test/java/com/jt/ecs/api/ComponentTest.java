@@ -0,0 +1,55 @@
+package com.jt.ecs.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComponentTest {
+
+    record Payload(String value) {}
+
+    @Test
+    public void testLazyComponentDecodesOnce() {
+        var decodes = new AtomicInteger();
+        var id = new CompactId(1, 1);
+        var entityId = new CompactId(2, 2);
+        var component = Component.<Object>lazy(id, entityId, Payload.class, () -> {
+            decodes.incrementAndGet();
+            return new Payload("decoded");
+        }, false);
+
+        var entity = new Entity<>(entityId, List.of(component));
+        assertTrue(entity.getComponent(Payload.class).isPresent());
+        assertEquals(0, decodes.get());
+
+        assertEquals(new Payload("decoded"), component.data());
+        assertEquals(new Payload("decoded"), component.data());
+        assertEquals(1, decodes.get());
+        assertEquals(new Component<>(id, entityId, new Payload("decoded")), component);
+    }
+
+    @Test
+    public void testRejectsNullData() {
+        var exception = assertThrows(NullPointerException.class,
+                () -> new Component<Object>(new CompactId(1, 1), new CompactId(2, 2), null));
+        assertEquals("data", exception.getMessage());
+    }
+
+    @Test
+    public void testEntityTypeIndex() {
+        var entityId = new CompactId(2, 2);
+        var first = new Component<Object>(new CompactId(1, 1), entityId, new Payload("first"));
+        var second = new Component<Object>(new CompactId(1, 2), entityId, "second");
+        var entity = new Entity<>(entityId, List.of(first, second));
+
+        assertSame(first, entity.getComponentOrNull(Payload.class));
+        assertEquals("second", entity.getDataOrNull(String.class));
+        assertNull(entity.getComponentOrNull(Integer.class));
+        assertTrue(entity.hasComponent(Payload.class));
+        assertFalse(entity.hasComponent(Integer.class));
+        assertTrue(entity.getComponent(Integer.class).isEmpty());
+    }
+}
@@ -0,0 +1,46 @@
+package com.jt.ecs.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramRegistryMetricsTest {
+
+    @Test
+    public void testQuantilesWithinBucketPrecision() {
+        var histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000);
+        }
+
+        var snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.count());
+        assertEquals(1_000_000, snapshot.max());
+        assertEquals(500_000, snapshot.p50(), 500_000 * 0.125);
+        assertEquals(990_000, snapshot.p99(), 990_000 * 0.125);
+        assertTrue(snapshot.p999() <= snapshot.max());
+    }
+
+    @Test
+    public void testRecordsRowsPayloadAndErrors() {
+        var metrics = new HistogramRegistryMetrics();
+        metrics.recordOperation(RegistryMetrics.Operation.TRANSACTION, 1_000, 3, 120, null);
+        metrics.recordOperation(RegistryMetrics.Operation.TRANSACTION, 2_000, 0, 0, new DuplicateUniqueDataException("dup"));
+
+        var stats = metrics.stats(RegistryMetrics.Operation.TRANSACTION);
+        assertEquals(2, stats.latency().count());
+        assertEquals(3, stats.rows());
+        assertEquals(120, stats.payloadSize());
+        assertEquals(Map.of(DuplicateUniqueDataException.class.getName(), 1L), stats.errors());
+        assertEquals(0, metrics.stats(RegistryMetrics.Operation.CHANGES_SINCE).latency().count());
+    }
+
+    @Test
+    public void testCompositeSkipsDisabled() {
+        assertSame(RegistryMetrics.NOOP, RegistryMetrics.composite(RegistryMetrics.NOOP));
+        var metrics = new HistogramRegistryMetrics();
+        assertSame(metrics, RegistryMetrics.composite(RegistryMetrics.NOOP, metrics));
+    }
+}
@@ -0,0 +1,39 @@
+package com.jt.ecs.api;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JfrRegistryMetricsTest {
+
+    @Test
+    public void testEventsSpanTheOperationAndHonorThresholds() throws Exception {
+        var metrics = new JfrRegistryMetrics();
+        var file = Files.createTempFile("registry-metrics", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable("com.jt.ecs.RegistryOperation").withThreshold(Duration.ofMillis(20));
+            recording.start();
+
+            var slow = metrics.operationStarted(RegistryMetrics.Operation.TRANSACTION);
+            Thread.sleep(50);
+            metrics.recordOperation(slow, RegistryMetrics.Operation.TRANSACTION, 50_000_000, 2, 64, null);
+            // below the threshold, so JFR drops it
+            var fast = metrics.operationStarted(RegistryMetrics.Operation.CHANGES_SINCE);
+            metrics.recordOperation(fast, RegistryMetrics.Operation.CHANGES_SINCE, 1_000, 0, 0, null);
+
+            recording.stop();
+            recording.dump(file);
+            var events = RecordingFile.readAllEvents(file);
+            assertEquals(1, events.size());
+            assertEquals("TRANSACTION", events.getFirst().getString("operation"));
+            assertTrue(events.getFirst().getDuration().toMillis() >= 50);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
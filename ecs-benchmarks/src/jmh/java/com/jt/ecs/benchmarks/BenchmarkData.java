@@ -0,0 +1,22 @@
+package com.jt.ecs.benchmarks;
+
+import com.jt.ecs.mysql.ComponentSystem;
+import com.jt.ecs.mysql.SystemId;
+
+import java.util.List;
+
+public sealed interface BenchmarkData {
+    ComponentSystem<BenchmarkData> SYSTEM = new ComponentSystem<>(new SystemId((byte) 1), new JacksonDataMapper());
+
+    record IdempotencyKey(String key) implements BenchmarkData {
+    }
+
+    record Account(String owner, String currency, long balance) implements BenchmarkData {
+    }
+
+    record Address(String street, String city, String country, String postalCode) implements BenchmarkData {
+    }
+
+    record AuditTrail(List<String> events) implements BenchmarkData {
+    }
+}
@@ -0,0 +1,39 @@
+package com.jt.ecs.benchmarks;
+
+import com.jt.ecs.mysql.DataMapper;
+import com.jt.ecs.mysql.TypeAndData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataMapperBenchmark {
+    @Param({"1", "16", "256"})
+    public int auditEvents;
+
+    private DataMapper<BenchmarkData> mapper;
+    private BenchmarkData data;
+    private TypeAndData typeAndData;
+
+    @Setup
+    public void setup() {
+        mapper = BenchmarkData.SYSTEM.mapper();
+        data = Fixtures.auditTrail(auditEvents);
+        typeAndData = mapper.map(data);
+    }
+
+    @Benchmark
+    public TypeAndData serialize() {
+        return mapper.map(data);
+    }
+
+    @Benchmark
+    public BenchmarkData deserialize() {
+        return mapper.map(typeAndData);
+    }
+}
@@ -0,0 +1,41 @@
+package com.jt.ecs.benchmarks;
+
+import com.jt.ecs.api.Component;
+import com.jt.ecs.api.Entity;
+import com.jt.ecs.id.UniqueId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityBenchmark {
+    private Entity<BenchmarkData> entity;
+
+    @Setup
+    public void setup() {
+        var entityId = UniqueId.generate();
+        entity = new Entity<>(entityId, Fixtures.entity(entityId, UUID.randomUUID().toString()));
+    }
+
+    @Benchmark
+    public Optional<Component<BenchmarkData.IdempotencyKey>> getFirstComponent() {
+        return entity.getComponent(BenchmarkData.IdempotencyKey.class);
+    }
+
+    @Benchmark
+    public Optional<Component<BenchmarkData.AuditTrail>> getLastComponent() {
+        return entity.getComponent(BenchmarkData.AuditTrail.class);
+    }
+
+    @Benchmark
+    public BenchmarkData.AuditTrail getLastDataOrNull() {
+        return entity.getDataOrNull(BenchmarkData.AuditTrail.class);
+    }
+}
@@ -0,0 +1,56 @@
+package com.jt.ecs.benchmarks;
+
+import com.jt.ecs.api.Component;
+import com.jt.ecs.api.Id;
+import com.jt.ecs.api.Registry;
+import com.jt.ecs.id.UniqueId;
+import com.jt.ecs.inmemory.InMemoryRegistry;
+import com.jt.ecs.mysql.MysqlRegistry;
+import com.mysql.cj.jdbc.MysqlDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public final class Fixtures {
+    public final static String MYSQL_URL_PROPERTY = "ecs.mysql.url";
+
+    private Fixtures() {
+    }
+
+    public static List<Component<BenchmarkData>> entity(Id entityId, String idempotencyKey) {
+        return List.of(
+                new Component<>(UniqueId.generate(), entityId, new BenchmarkData.IdempotencyKey(idempotencyKey), true),
+                new Component<>(UniqueId.generate(), entityId, new BenchmarkData.Account("owner-" + idempotencyKey, "EUR", 1_000_00)),
+                new Component<>(UniqueId.generate(), entityId, new BenchmarkData.Address("1 Main Street", "Lisbon", "PT", "1000-001")),
+                new Component<>(UniqueId.generate(), entityId, auditTrail(16)));
+    }
+
+    public static List<Component<BenchmarkData>> entity() {
+        return entity(UniqueId.generate(), UUID.randomUUID().toString());
+    }
+
+    public static BenchmarkData.AuditTrail auditTrail(int events) {
+        var list = new ArrayList<String>(events);
+        for (int i = 0; i < events; i++) {
+            list.add("event-" + i + " changed balance by " + (i * 7));
+        }
+        return new BenchmarkData.AuditTrail(list);
+    }
+
+    public static Registry<BenchmarkData> registry(String backend) {
+        return switch (backend) {
+            case "in-memory" -> new InMemoryRegistry<>();
+            case "mysql" -> {
+                var url = System.getProperty(MYSQL_URL_PROPERTY);
+                if (url == null) {
+                    throw new IllegalStateException("The mysql backend requires -D" + MYSQL_URL_PROPERTY);
+                }
+                var dataSource = new MysqlDataSource();
+                dataSource.setURL(MysqlRegistry.withStatementCache(url));
+                yield new MysqlRegistry<>(BenchmarkData.SYSTEM, dataSource);
+            }
+            default -> throw new IllegalArgumentException("Unknown backend: " + backend);
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package com.jt.ecs.benchmarks;
+
+import com.jt.ecs.mysql.DataMapper;
+import com.jt.ecs.mysql.TypeAndData;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+public class JacksonDataMapper implements DataMapper<BenchmarkData> {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    enum DataType {
+        IDEMPOTENCY_KEY(1, BenchmarkData.IdempotencyKey.class),
+        ACCOUNT(2, BenchmarkData.Account.class),
+        ADDRESS(3, BenchmarkData.Address.class),
+        AUDIT_TRAIL(4, BenchmarkData.AuditTrail.class);
+
+        private final int id;
+        private final Class<? extends BenchmarkData> clazz;
+
+        DataType(int id, Class<? extends BenchmarkData> clazz) {
+            this.id = id;
+            this.clazz = clazz;
+        }
+
+        private static final Map<Integer, DataType> BY_ID =
+                Arrays.stream(values()).collect(Collectors.toMap(e -> e.id, e -> e));
+
+        private static final Map<Class<?>, DataType> BY_CLASS =
+                Arrays.stream(values()).collect(Collectors.toMap(e -> e.clazz, e -> e));
+
+        static DataType fromId(int id) {
+            return Optional.ofNullable(BY_ID.get(id))
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown type ID: " + id));
+        }
+
+        static DataType fromClass(Class<?> clazz) {
+            return Optional.ofNullable(BY_CLASS.get(clazz))
+                    .orElseThrow(() -> new IllegalArgumentException("Unsupported class: " + clazz));
+        }
+    }
+
+    @Override
+    public TypeAndData map(BenchmarkData data) {
+        var type = DataType.fromClass(data.getClass());
+        return new TypeAndData(type.id, mapper.writeValueAsString(data));
+    }
+
+    @Override
+    public BenchmarkData map(TypeAndData data) {
+        var type = DataType.fromId(data.type());
+        return mapper.readValue(data.data(), type.clazz);
+    }
+
+    @Override
+    public List<Integer> resolveTypes(List<Class<? extends BenchmarkData>> classes) {
+        return classes.stream()
+                .map(DataType::fromClass)
+                .map(t -> t.id)
+                .toList();
+    }
+
+    @Override
+    public Class<? extends BenchmarkData> resolveClass(int type) {
+        return DataType.fromId(type).clazz;
+    }
+}
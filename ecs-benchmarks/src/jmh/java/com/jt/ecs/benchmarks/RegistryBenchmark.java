@@ -0,0 +1,97 @@
+package com.jt.ecs.benchmarks;
+
+import com.jt.ecs.api.Entity;
+import com.jt.ecs.api.Id;
+import com.jt.ecs.api.Query;
+import com.jt.ecs.api.Registry;
+import com.jt.ecs.id.UniqueId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistryBenchmark {
+    private final static int PRELOADED_ENTITIES = 10_000;
+
+    // overridden by the jmh task, mysql is only added when -PmysqlUrl is set
+    @Param({"in-memory"})
+    public String backend;
+
+    private Registry<BenchmarkData> registry;
+    private Id[] entityIds;
+    private BenchmarkData.IdempotencyKey[] keys;
+
+    @Setup
+    public void setup() {
+        registry = Fixtures.registry(backend);
+        entityIds = new Id[PRELOADED_ENTITIES];
+        keys = new BenchmarkData.IdempotencyKey[PRELOADED_ENTITIES];
+        for (int i = 0; i < PRELOADED_ENTITIES; i++) {
+            var entityId = UniqueId.generate();
+            var key = UUID.randomUUID().toString();
+            var components = Fixtures.entity(entityId, key);
+            registry.execute(() -> components);
+            entityIds[i] = entityId;
+            keys[i] = new BenchmarkData.IdempotencyKey(key);
+        }
+    }
+
+    private void write() {
+        var components = Fixtures.entity();
+        registry.execute(() -> components);
+    }
+
+    private Optional<Entity<BenchmarkData>> readByEntityId() {
+        var id = entityIds[ThreadLocalRandom.current().nextInt(entityIds.length)];
+        return registry.execute(Query.byEntityId(id));
+    }
+
+    private Optional<Entity<BenchmarkData>> readByUniqueKey() {
+        var key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        return registry.execute(Query.<BenchmarkData>byUniqueKey(key));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void writeSingleThreaded() {
+        write();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void writeMultiThreaded() {
+        write();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Optional<Entity<BenchmarkData>> byEntityIdSingleThreaded() {
+        return readByEntityId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Optional<Entity<BenchmarkData>> byEntityIdMultiThreaded() {
+        return readByEntityId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Optional<Entity<BenchmarkData>> byUniqueKeySingleThreaded() {
+        return readByUniqueKey();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Optional<Entity<BenchmarkData>> byUniqueKeyMultiThreaded() {
+        return readByUniqueKey();
+    }
+}
@@ -0,0 +1,36 @@
+package com.jt.ecs.benchmarks;
+
+import com.jt.ecs.api.CompactId;
+import com.jt.ecs.api.Id;
+import com.jt.ecs.id.UniqueId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UniqueIdBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public Id generate() {
+        return UniqueId.generate();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Id generateContended() {
+        return UniqueId.generate();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    @OperationsPerInvocation(64)
+    public List<CompactId> generateBatchContended() {
+        return UniqueId.generate(64);
+    }
+}
@@ -0,0 +1,51 @@
+package com.jt.ecs.mysql;
+
+import com.jt.ecs.benchmarks.BenchmarkData;
+import com.jt.ecs.benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertBenchmark {
+    @Param({"1", "16", "256"})
+    public int entities;
+
+    private List<Map<String, ValueWithType>> rows;
+    private PlanCache planCache;
+
+    @Setup
+    public void setup() {
+        var registry = new MysqlRegistry<>(BenchmarkData.SYSTEM, null);
+        planCache = new PlanCache();
+        rows = new ArrayList<>();
+        for (int i = 0; i < entities; i++) {
+            for (var component : Fixtures.entity()) {
+                rows.add(LegacyRows.intoRow(registry, BenchmarkData.SYSTEM, component));
+            }
+        }
+    }
+
+    @Benchmark
+    public Insert build() {
+        return Insert.of("component")
+                .withRows(rows)
+                .build();
+    }
+
+    @Benchmark
+    public Insert buildWithPlanCache() {
+        return Insert.of("component")
+                .withRows(rows)
+                .withPlanCache(planCache)
+                .build();
+    }
+}
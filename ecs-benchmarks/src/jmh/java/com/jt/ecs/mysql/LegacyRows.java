@@ -0,0 +1,34 @@
+package com.jt.ecs.mysql;
+
+import com.jt.ecs.api.Component;
+
+import java.sql.JDBCType;
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+// the map-per-row encoding MysqlRegistry used before ComponentRows, kept as the allocation baseline
+final class LegacyRows {
+    private LegacyRows() {
+    }
+
+    static <D> Map<String, ValueWithType> intoRow(MysqlRegistry<D> registry, ComponentSystem<D> system, Component<D> component) {
+        var typeAndData = system.mapper().map(component.data());
+        var uniqueFlag = component.unique()
+                ? new ValueWithType(1, JDBCType.TINYINT)
+                : ValueWithType.NULL;
+        var typeAndDataHash = MysqlRegistry.hash(typeAndData);
+
+        return Map.of(
+                "system_id", new ValueWithType(Byte.toUnsignedInt(system.id().value()), JDBCType.TINYINT),
+                "id", new ValueWithType(component.id().bytes(), JDBCType.BINARY),
+                "entity_id", new ValueWithType(component.entityId().bytes(), JDBCType.BINARY),
+                "type", new ValueWithType(typeAndData.type(), JDBCType.SMALLINT),
+                "data", new ValueWithType(typeAndData.data(), JDBCType.LONGNVARCHAR),
+                "version", new ValueWithType(0, JDBCType.INTEGER),
+                "created_at", new ValueWithType(ZonedDateTime.now(Clock.systemUTC()), JDBCType.TIMESTAMP),
+                "type_and_data_hash", new ValueWithType(typeAndDataHash, JDBCType.BINARY),
+                "unique_flag", uniqueFlag
+        );
+    }
+}
@@ -0,0 +1,86 @@
+package com.jt.ecs.mysql;
+
+import com.jt.ecs.api.Component;
+import com.jt.ecs.benchmarks.BenchmarkData;
+import com.jt.ecs.benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// with -prof gc, gc.alloc.rate.norm of legacyInsert vs columnarInsert is the bytes allocated per component
+// on the insert path before and after the columnar encoder
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowEncodingBenchmark {
+    private final static int COMPONENTS = 256;
+
+    private MysqlRegistry<BenchmarkData> registry;
+    private Component<BenchmarkData> component;
+    private TypeAndData typeAndData;
+    private byte[] encoded;
+    private List<Component<BenchmarkData>> components;
+    private PlanCache planCache;
+    private Connection connection;
+
+    @Setup
+    public void setup() {
+        registry = new MysqlRegistry<>(BenchmarkData.SYSTEM, null);
+        component = Fixtures.entity().get(1);
+        typeAndData = BenchmarkData.SYSTEM.mapper().map(component.data());
+        encoded = typeAndData.data().getBytes(StandardCharsets.UTF_8);
+        components = new ArrayList<>();
+        while (components.size() < COMPONENTS) {
+            components.addAll(Fixtures.entity());
+        }
+        planCache = new PlanCache();
+        connection = NoopStatements.connection();
+    }
+
+    @Benchmark
+    public Map<String, ValueWithType> legacyIntoRow() {
+        return LegacyRows.intoRow(registry, BenchmarkData.SYSTEM, component);
+    }
+
+    @Benchmark
+    public byte[] hash() {
+        return registry.hash(typeAndData);
+    }
+
+    // the same digest fed codec bytes, without encoding the JSON string first
+    @Benchmark
+    public byte[] binaryHash() {
+        return MysqlRegistry.hash(typeAndData.type(), encoded);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMPONENTS)
+    public void legacyInsert() throws SQLException {
+        var rows = new ArrayList<Map<String, ValueWithType>>(components.size());
+        for (var c : components) {
+            rows.add(LegacyRows.intoRow(registry, BenchmarkData.SYSTEM, c));
+        }
+        var insert = Insert.of("component")
+                .withRows(rows)
+                .build();
+        insert.prepare(connection);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMPONENTS)
+    public void columnarInsert() throws SQLException {
+        var rows = registry.encode(components);
+        var sql = planCache.get(rows.size(), ComponentRows::insertSql);
+        rows.bind(connection.prepareStatement(sql), 0, rows.size(), new Timestamp(System.currentTimeMillis()));
+    }
+}
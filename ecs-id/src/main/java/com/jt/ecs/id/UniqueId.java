@@ -1,19 +1,61 @@
 package com.jt.ecs.id;
 
-import com.fasterxml.uuid.Generators;
-import com.fasterxml.uuid.NoArgGenerator;
-import com.jt.ecs.api.Id;
+import com.jt.ecs.api.CompactId;
 
-import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
-public record UniqueId(byte[] bytes) implements Id {
-    private final static NoArgGenerator GENERATOR = Generators.timeBasedEpochRandomGenerator();
+// UUIDv7 ids generated from per-thread state, so threads never contend on a shared generator.
+// Ids from one thread are strictly increasing, ids from different threads are kept apart by 73 random bits.
+public final class UniqueId {
+    private final static ThreadLocal<Generator> GENERATORS = ThreadLocal.withInitial(Generator::new);
 
-    public static UniqueId generate() {
-        var uuid = GENERATOR.generate();
-        var bb = ByteBuffer.wrap(new byte[16]);
-        bb.putLong(uuid.getMostSignificantBits());
-        bb.putLong(uuid.getLeastSignificantBits());
-        return new UniqueId(bb.array());
+    private UniqueId() {
+    }
+
+    public static CompactId generate() {
+        return GENERATORS.get().next(System.currentTimeMillis());
+    }
+
+    public static List<CompactId> generate(int count) {
+        var generator = GENERATORS.get();
+        var millis = System.currentTimeMillis();
+        var ids = new ArrayList<CompactId>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(generator.next(millis));
+        }
+        return ids;
+    }
+
+    private static final class Generator {
+        private final static long VERSION = 0x7000L;
+        private final static long VARIANT = 0x8000_0000_0000_0000L;
+        private final static long RAND_B_MASK = 0x3FFF_FFFF_FFFF_FFFFL;
+
+        private long lastMillis = -1;
+        // 12 bits of rand_a and 62 bits of rand_b form one 74 bit counter within a millisecond
+        private long randA;
+        private long randB;
+
+        CompactId next(long millis) {
+            if (millis > lastMillis) {
+                var random = ThreadLocalRandom.current();
+                lastMillis = millis;
+                // the top bit of rand_a starts clear, leaving room to count up within the millisecond
+                randA = random.nextInt(0x800);
+                randB = random.nextLong() & RAND_B_MASK;
+            } else if (++randB > RAND_B_MASK) {
+                randB = 0;
+                if (++randA > 0xFFF) {
+                    // counter exhausted, borrow the next millisecond to stay monotonic
+                    lastMillis++;
+                    randA = 0;
+                }
+            }
+            var high = (lastMillis << 16) | VERSION | randA;
+            var low = VARIANT | randB;
+            return new CompactId(high, low);
+        }
     }
 }
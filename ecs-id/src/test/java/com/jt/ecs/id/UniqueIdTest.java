@@ -0,0 +1,27 @@
+package com.jt.ecs.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UniqueIdTest {
+
+    @Test
+    public void testGeneratesMonotonicVersion7Ids() {
+        var ids = UniqueId.generate(10_000);
+        ids.add(UniqueId.generate());
+
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i - 1).compareTo(ids.get(i)) < 0);
+        }
+        assertEquals(ids.size(), new HashSet<>(ids).size());
+
+        var uuid = new UUID(ids.getFirst().high(), ids.getFirst().low());
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertTrue(Math.abs(System.currentTimeMillis() - (ids.getFirst().high() >>> 16)) < 60_000);
+    }
+}
@@ -0,0 +1,222 @@
+package com.jt.ecs.inmemory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+// Append-only log of records in preallocated, memory-mapped segment files. A record is its length,
+// the CRC32C of its payload and the payload; the length is written last and a zero length ends a
+// segment, so a torn write shows up as a bad checksum or a zero length at the tail and is cut off
+// on open. Appends are not thread safe, the caller serializes them. Durability is a separate step:
+// the first thread that waits for a position forces the segment for every thread waiting behind it.
+final class AppendLog implements AutoCloseable {
+    private final static Pattern SEGMENT_NAME = Pattern.compile("log-(\\d{10})");
+    private final static int HEADER_SIZE = 8;
+
+    private record Scan(int end, boolean corrupt) {}
+
+    private final Path directory;
+    private final long segmentSize;
+    private volatile MappedByteBuffer segment;
+    private int segmentIndex;
+    private int offset;
+    private volatile long appended;
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private boolean syncing;
+    private volatile long durable;
+
+    private AppendLog(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    // replays every record of the segments from firstSegment on, in order, and deletes older ones
+    static AppendLog open(Path directory, long segmentSize, int firstSegment, Consumer<ByteBuffer> replay) throws IOException {
+        var log = new AppendLog(directory, segmentSize);
+        var indexes = segmentIndexes(directory);
+        for (var index : indexes) {
+            if (index < firstSegment) {
+                Files.delete(log.segmentPath(index));
+            }
+        }
+        indexes.removeIf(index -> index < firstSegment);
+
+        for (int i = 0; i < indexes.size(); i++) {
+            var buffer = log.map(indexes.get(i), 0);
+            var scan = replay(buffer, replay);
+            if (i < indexes.size() - 1) {
+                if (scan.corrupt()) {
+                    throw new IllegalStateException("Corrupt record in log segment " + indexes.get(i) + " at " + scan.end());
+                }
+                continue;
+            }
+            // the last segment may end in a torn write. Everything after the last valid record is zeroed,
+            // so no leftover bytes can pass for a record once the segment is followed by others.
+            var tail = scan.end();
+            for (int position = tail; position < buffer.capacity(); position++) {
+                if (buffer.get(position) != 0) {
+                    buffer.put(position, (byte) 0);
+                }
+            }
+            buffer.force();
+            log.segment = buffer;
+            log.segmentIndex = indexes.get(i);
+            log.offset = tail;
+        }
+        if (log.segment == null) {
+            log.segment = log.map(firstSegment, segmentSize);
+            log.segmentIndex = firstSegment;
+        }
+        return log;
+    }
+
+    private static Scan replay(MappedByteBuffer buffer, Consumer<ByteBuffer> replay) {
+        var crc = new CRC32C();
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            var length = buffer.getInt(position);
+            if (length == 0) {
+                return new Scan(position, false);
+            }
+            if (length < 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+                return new Scan(position, true);
+            }
+            var payload = buffer.slice(position + HEADER_SIZE, length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                return new Scan(position, true);
+            }
+            replay.accept(payload.asReadOnlyBuffer());
+            position += HEADER_SIZE + length;
+        }
+        return new Scan(position, false);
+    }
+
+    private static List<Integer> segmentIndexes(Path directory) throws IOException {
+        var indexes = new ArrayList<Integer>();
+        try (var files = Files.list(directory)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                var matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    indexes.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        indexes.sort(null);
+        return indexes;
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve("log-%010d".formatted(index));
+    }
+
+    // maps an existing segment as it is, or creates one of the given size
+    private MappedByteBuffer map(int index, long size) throws IOException {
+        try (var channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var length = Math.max(channel.size(), size);
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    // the log position after the record, to pass to awaitDurable
+    long append(byte[] payload) {
+        var size = HEADER_SIZE + payload.length;
+        if (offset + size > segment.capacity()) {
+            roll(size);
+        }
+        var crc = new CRC32C();
+        crc.update(payload);
+        segment.put(offset + HEADER_SIZE, payload);
+        segment.putInt(offset + Integer.BYTES, (int) crc.getValue());
+        segment.putInt(offset, payload.length);
+        offset += size;
+        appended += size;
+        return appended;
+    }
+
+    // closes the current segment and starts the next one, returns the index of the new segment
+    int roll() {
+        return roll(0);
+    }
+
+    private int roll(int minimumSize) {
+        try {
+            // forced before it is replaced, a sync that picks up the new segment must not miss this one
+            segment.force();
+            segment = map(segmentIndex + 1, Math.max(segmentSize, minimumSize + HEADER_SIZE));
+            segmentIndex++;
+            offset = 0;
+            return segmentIndex;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void awaitDurable(long position) {
+        if (durable >= position) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            while (durable < position) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                // appended first: if a roll happens in between, the segment read next already holds these bytes
+                var target = appended;
+                var current = segment;
+                syncLock.unlock();
+                var forced = false;
+                try {
+                    current.force();
+                    forced = true;
+                } finally {
+                    syncLock.lock();
+                    if (forced) {
+                        durable = Math.max(durable, target);
+                    }
+                    syncing = false;
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    void deleteBefore(int index) throws IOException {
+        for (var existing : segmentIndexes(directory)) {
+            if (existing < index) {
+                Files.deleteIfExists(segmentPath(existing));
+            }
+        }
+    }
+
+    // bytes appended since this log was opened
+    long appended() {
+        return appended;
+    }
+
+    @Override
+    public void close() {
+        segment.force();
+    }
+}
@@ -0,0 +1,118 @@
+package com.jt.ecs.inmemory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+class BoundedCache<K, V> {
+    private final static int SEGMENTS = 16;
+
+    private record Entry<V>(V value, long expiresAt) {}
+
+    private final List<Segment> segments;
+    private final long ttlNanos;
+    private final LongSupplier nanoTime;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    BoundedCache(int maximumSize, Duration ttl) {
+        this(maximumSize, ttl, System::nanoTime);
+    }
+
+    BoundedCache(int maximumSize, Duration ttl, LongSupplier nanoTime) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.nanoTime = nanoTime;
+        // a list, an array of the inner Segment class would be a raw generic array
+        this.segments = new ArrayList<>(SEGMENTS);
+        var segmentCapacity = Math.max(1, (maximumSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new Segment(segmentCapacity));
+        }
+    }
+
+    private Segment segment(Object key) {
+        int h = key.hashCode();
+        return segments.get((h ^ (h >>> 16)) & (SEGMENTS - 1));
+    }
+
+    V get(K key) {
+        var segment = segment(key);
+        segment.lock.lock();
+        try {
+            var entry = segment.map.get(key);
+            if (entry != null && entry.expiresAt() - nanoTime.getAsLong() <= 0) {
+                segment.map.remove(key);
+                evictions.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value();
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    void put(K key, V value) {
+        var segment = segment(key);
+        segment.lock.lock();
+        try {
+            segment.map.put(key, new Entry<>(value, nanoTime.getAsLong() + ttlNanos));
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    void invalidate(K key) {
+        var segment = segment(key);
+        segment.lock.lock();
+        try {
+            segment.map.remove(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    CacheStats stats() {
+        long size = 0;
+        for (var segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Entry<V>> map;
+
+        Segment(int capacity) {
+            this.map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.jt.ecs.inmemory;
+
+public record CacheStats(long hits, long misses, long evictions, long size) {
+
+    public double hitRatio() {
+        var requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
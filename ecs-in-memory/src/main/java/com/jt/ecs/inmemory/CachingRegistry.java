@@ -0,0 +1,206 @@
+package com.jt.ecs.inmemory;
+
+import com.jt.ecs.api.*;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class CachingRegistry<D> implements Registry<D> {
+    private final static int EPOCH_STRIPES = 64;
+
+    private final Registry<D> delegate;
+    // entities are always cached with all their components, narrower queries are answered by filtering
+    private final BoundedCache<CompactId, Entity<D>> entities;
+    private final BoundedCache<D, Id> uniqueKeys;
+    // one epoch per stripe of entity ids, bumped around every write to an entity of the stripe so that a read
+    // racing with a write to its entity never caches what it loaded. Writes to other stripes leave it cacheable.
+    private final AtomicLongArray writeEpochs = new AtomicLongArray(EPOCH_STRIPES);
+
+    public CachingRegistry(Registry<D> delegate, int maximumSize, Duration ttl) {
+        this.delegate = delegate;
+        this.entities = new BoundedCache<>(maximumSize, ttl);
+        this.uniqueKeys = new BoundedCache<>(maximumSize, ttl);
+    }
+
+    CachingRegistry(Registry<D> delegate, BoundedCache<CompactId, Entity<D>> entities, BoundedCache<D, Id> uniqueKeys) {
+        this.delegate = delegate;
+        this.entities = entities;
+        this.uniqueKeys = uniqueKeys;
+    }
+
+    public CacheStats entityCacheStats() {
+        return entities.stats();
+    }
+
+    public CacheStats uniqueKeyCacheStats() {
+        return uniqueKeys.stats();
+    }
+
+    private static CompactId key(Id id) {
+        return CompactId.of(id);
+    }
+
+    static int stripe(CompactId key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (EPOCH_STRIPES - 1);
+    }
+
+    @Override
+    public void execute(Transaction<D> transaction) {
+        // the transaction is materialized once so the delegate writes exactly what gets invalidated
+        var components = transaction.execute();
+        invalidate(components);
+        try {
+            delegate.execute(() -> components);
+        } finally {
+            invalidate(components);
+        }
+    }
+
+    private void invalidate(List<Component<D>> components) {
+        for (var component : components) {
+            var key = key(component.entityId());
+            writeEpochs.incrementAndGet(stripe(key));
+            entities.invalidate(key);
+        }
+    }
+
+    @Override
+    public Optional<Entity<D>> execute(Query.SingletonQuery<D> query) {
+        return switch (query) {
+            case Query.SingletonQuery.ByEntityIdQuery<D> q -> find(q.id(), q.selectedTypes());
+            case Query.SingletonQuery.ByUniqueKey<D> q -> find(q);
+        };
+    }
+
+    @Override
+    public Map<Id, Entity<D>> execute(Query.MultiQuery<D> query) {
+        return switch (query) {
+            case Query.MultiQuery.ByEntityIdsQuery<D> q -> find(q);
+        };
+    }
+
+    // pages are not cached, their membership changes with every write to the index
+    @Override
+    public Page<D> execute(Query.PagedQuery<D> query) {
+        return delegate.execute(query);
+    }
+
+    @Override
+    public ChangeBatch<D> changesSince(long cursor, List<Class<? extends D>> types, int batchSize) {
+        return delegate.changesSince(cursor, types, batchSize);
+    }
+
+    private Optional<Entity<D>> find(Id id, List<Class<? extends D>> selectedTypes) {
+        var key = key(id);
+        var cached = entities.get(key);
+        if (cached != null) {
+            return select(cached, selectedTypes);
+        }
+
+        var stripe = stripe(key);
+        var epoch = writeEpochs.get(stripe);
+        var loaded = delegate.execute(Query.<D>byEntityId(id));
+        loaded.ifPresent(entity -> cache(key, entity, epoch));
+        return loaded.flatMap(entity -> select(entity, selectedTypes));
+    }
+
+    // Caches what a read loaded after taking its stripe's epoch. A write may bump the epoch and invalidate between
+    // the check and the put, so the epoch is read again after the put and the entry dropped if it moved: either
+    // that read sees the write's second bump or the write's second invalidate comes after the put.
+    private void cache(CompactId key, Entity<D> entity, long epoch) {
+        var stripe = stripe(key);
+        if (writeEpochs.get(stripe) != epoch) {
+            return;
+        }
+        entities.put(key, entity);
+        if (writeEpochs.get(stripe) != epoch) {
+            entities.invalidate(key);
+        }
+    }
+
+    private Optional<Entity<D>> find(Query.SingletonQuery.ByUniqueKey<D> query) {
+        var entityId = uniqueKeys.get(query.keyData());
+        if (entityId != null) {
+            // an update may have moved the key off the cached entity, whose own cache entry is invalidated on writes
+            var entity = find(entityId, List.of());
+            if (entity.isPresent() && ownsKey(entity.get(), query.keyData())) {
+                return entity.flatMap(e -> select(e, query.selectedTypes()));
+            }
+            uniqueKeys.invalidate(query.keyData());
+        }
+
+        // misses are not cached, a key that doesn't exist yet may be claimed by another writer at any time.
+        // The entity's stripe is only known after the load, so every stripe's epoch is taken before it.
+        var epochs = new long[EPOCH_STRIPES];
+        for (int stripe = 0; stripe < EPOCH_STRIPES; stripe++) {
+            epochs[stripe] = writeEpochs.get(stripe);
+        }
+        var loaded = delegate.execute(Query.byUniqueKey(query.keyData()));
+        loaded.ifPresent(entity -> {
+            uniqueKeys.put(query.keyData(), entity.id());
+            var key = key(entity.id());
+            cache(key, entity, epochs[stripe(key)]);
+        });
+        return loaded.flatMap(entity -> select(entity, query.selectedTypes()));
+    }
+
+    private static <D> boolean ownsKey(Entity<D> entity, D keyData) {
+        for (var component : entity.componentList()) {
+            if (component.unique() && component.dataType() == keyData.getClass() && keyData.equals(component.data())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<Id, Entity<D>> find(Query.MultiQuery.ByEntityIdsQuery<D> query) {
+        var result = new LinkedHashMap<Id, Entity<D>>();
+        var misses = new ArrayList<Id>();
+        for (var id : query.ids()) {
+            var cached = entities.get(key(id));
+            if (cached != null) {
+                select(cached, query.selectedTypes()).ifPresent(entity -> result.put(id, entity));
+            } else {
+                misses.add(id);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        var epochs = new long[misses.size()];
+        for (int i = 0; i < misses.size(); i++) {
+            epochs[i] = writeEpochs.get(stripe(key(misses.get(i))));
+        }
+        var loaded = delegate.execute(Query.<D>byEntityIds(misses));
+        for (int i = 0; i < misses.size(); i++) {
+            var id = misses.get(i);
+            var entity = loaded.get(id);
+            if (entity == null) {
+                continue;
+            }
+            cache(key(id), entity, epochs[i]);
+            select(entity, query.selectedTypes()).ifPresent(selected -> result.put(id, selected));
+        }
+        return result;
+    }
+
+    private Optional<Entity<D>> select(Entity<D> entity, List<Class<? extends D>> selectedTypes) {
+        if (selectedTypes.isEmpty()) {
+            return Optional.of(entity);
+        }
+
+        var componentList = new ArrayList<Component<D>>();
+        for (var component : entity.componentList()) {
+            if (selectedTypes.contains(component.dataType())) {
+                componentList.add(component);
+            }
+        }
+        if (componentList.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Entity<>(entity.id(), Collections.unmodifiableList(componentList)));
+    }
+}
@@ -0,0 +1,385 @@
+package com.jt.ecs.inmemory;
+
+import com.jt.ecs.api.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Single-node persistent registry: an InMemoryRegistry that appends every committed transaction to an
+// AppendLog before execute returns. Transactions are logged in sequence order, so replaying the log
+// repeats every validation with the same outcome. A snapshot holds the latest component of each entity
+// and type as of a log segment boundary; startup loads the newest one and replays only the segments
+// after it, so restarts take time in proportion to the live data plus the log tail.
+// Readers may see a write before its fsync, a crash can lose such a write but none execute returned for.
+public class DurableRegistry<D> implements Registry<D>, AutoCloseable {
+    private final static Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d{10})");
+    private final static int SNAPSHOT_MAGIC = 0x45435353;
+    private final static int SNAPSHOT_FORMAT = 1;
+    // two ids, unique flag, version, type and data length
+    private final static int COMPONENT_HEADER_SIZE = 16 + 16 + 1 + 4 + 4 + 4;
+
+    private final Path directory;
+    private final ComponentCodec<D> codec;
+    private final long compactionThreshold;
+    private final InMemoryRegistry<D> registry;
+    private final AppendLog log;
+    private final RecoveryStats recoveryStats;
+    // held while appending and while a snapshot cuts the log, so the cut falls between two transactions
+    private final ReentrantLock logLock = new ReentrantLock();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private long loggedSequence;
+    private volatile long logBytesAtSnapshot;
+    private volatile RuntimeException failure;
+    private volatile boolean closed;
+
+    public record RecoveryStats(int snapshotComponents, long replayedTransactions, Duration elapsed) {}
+
+    private DurableRegistry(Builder<D> builder) throws IOException {
+        var start = System.nanoTime();
+        this.directory = builder.directory;
+        this.codec = builder.codec;
+        this.compactionThreshold = builder.compactionThreshold;
+        this.registry = new InMemoryRegistry<>(builder.indexes);
+
+        Files.createDirectories(directory);
+        var snapshot = latestSnapshot();
+        var snapshotComponents = 0;
+        var firstSegment = 0;
+        if (snapshot.isPresent()) {
+            firstSegment = snapshot.get();
+            snapshotComponents = loadSnapshot(snapshotPath(firstSegment));
+        }
+        var replayed = new long[1];
+        this.log = AppendLog.open(directory, builder.segmentSize, firstSegment, payload -> {
+            registry.write(decodeTransaction(payload), (components, lastSequence) -> loggedSequence = lastSequence);
+            replayed[0]++;
+        });
+        deleteSnapshotsBefore(firstSegment);
+        this.recoveryStats = new RecoveryStats(snapshotComponents, replayed[0], Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    public static <D> Builder<D> of(Path directory, ComponentCodec<D> codec) {
+        return new Builder<>(directory, codec);
+    }
+
+    public static class Builder<D> {
+        private final Path directory;
+        private final ComponentCodec<D> codec;
+        private long segmentSize = 64 * 1024 * 1024;
+        private long compactionThreshold = 256 * 1024 * 1024;
+        private final List<SecondaryIndex<D>> indexes = new ArrayList<>();
+
+        public Builder(Path directory, ComponentCodec<D> codec) {
+            this.directory = directory;
+            this.codec = codec;
+        }
+
+        public Builder<D> withSegmentSize(long segmentSize) {
+            if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Segment size must be positive and fit a mapped buffer: " + segmentSize);
+            }
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        // log bytes written since the last snapshot that start a compaction in the background
+        public Builder<D> withCompactionThreshold(long compactionThreshold) {
+            if (compactionThreshold <= 0) {
+                throw new IllegalArgumentException("Compaction threshold must be positive: " + compactionThreshold);
+            }
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        public Builder<D> withIndex(SecondaryIndex<D> index) {
+            this.indexes.add(index);
+            return this;
+        }
+
+        // opens the directory, recovering the state left by the previous run
+        public DurableRegistry<D> build() {
+            try {
+                return new DurableRegistry<>(this);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public RecoveryStats recoveryStats() {
+        return recoveryStats;
+    }
+
+    @Override
+    public void execute(Transaction<D> transaction) {
+        checkOpen();
+        var components = transaction.execute();
+        if (components.isEmpty()) {
+            return;
+        }
+        var record = encodeTransaction(components);
+        var position = new long[1];
+        registry.write(components, (published, lastSequence) -> {
+            logLock.lock();
+            try {
+                position[0] = log.append(record);
+                loggedSequence = lastSequence;
+            } catch (RuntimeException e) {
+                // the transaction is applied in memory but not logged, nothing written from now on is safe
+                failure = e;
+                throw e;
+            } finally {
+                logLock.unlock();
+            }
+        });
+        log.awaitDurable(position[0]);
+        if (log.appended() - logBytesAtSnapshot > compactionThreshold && compactionScheduled.compareAndSet(false, true)) {
+            Thread.ofPlatform()
+                    .name("ecs-durable-compaction")
+                    .daemon()
+                    .start(() -> {
+                        try {
+                            compact();
+                        } catch (RuntimeException e) {
+                            // the log still holds everything, the next write past the threshold tries again
+                        } finally {
+                            compactionScheduled.set(false);
+                        }
+                    });
+        }
+    }
+
+    // writes a snapshot of the current state and deletes the log segments it covers
+    public void compact() {
+        compactionLock.lock();
+        try {
+            checkOpen();
+            compactNow();
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private void compactNow() {
+        int segment;
+        long sequence;
+        long logBytes;
+        logLock.lock();
+        try {
+            segment = log.roll();
+            sequence = loggedSequence;
+            logBytes = log.appended();
+        } finally {
+            logLock.unlock();
+        }
+        try {
+            writeSnapshot(segment, registry.compactChanges(sequence), sequence);
+            log.deleteBefore(segment);
+            deleteSnapshotsBefore(segment);
+            logBytesAtSnapshot = logBytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Registry is closed");
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Log append failed, reopen the registry to recover", failure);
+        }
+    }
+
+    @Override
+    public Optional<Entity<D>> execute(Query.SingletonQuery<D> query) {
+        return registry.execute(query);
+    }
+
+    @Override
+    public Map<Id, Entity<D>> execute(Query.MultiQuery<D> query) {
+        return registry.execute(query);
+    }
+
+    @Override
+    public Page<D> execute(Query.PagedQuery<D> query) {
+        return registry.execute(query);
+    }
+
+    // sequences survive restarts, changes that a later change of the same entity and type replaced
+    // disappear once a snapshot covered both
+    @Override
+    public ChangeBatch<D> changesSince(long cursor, List<Class<? extends D>> types, int batchSize) {
+        return registry.changesSince(cursor, types, batchSize);
+    }
+
+    @Override
+    public void close() {
+        compactionLock.lock();
+        logLock.lock();
+        try {
+            closed = true;
+            log.close();
+        } finally {
+            logLock.unlock();
+            compactionLock.unlock();
+        }
+    }
+
+    private byte[] encodeTransaction(List<Component<D>> components) {
+        var encoded = new ArrayList<byte[]>(components.size());
+        var size = Integer.BYTES;
+        for (var component : components) {
+            var data = codec.encode(component.data());
+            encoded.add(data);
+            size += COMPONENT_HEADER_SIZE + data.length;
+        }
+        var buffer = ByteBuffer.allocate(size);
+        buffer.putInt(components.size());
+        for (int i = 0; i < components.size(); i++) {
+            putComponent(buffer, components.get(i), encoded.get(i));
+        }
+        return buffer.array();
+    }
+
+    private void putComponent(ByteBuffer buffer, Component<D> component, byte[] data) {
+        var id = CompactId.of(component.id());
+        var entityId = CompactId.of(component.entityId());
+        buffer.putLong(id.high()).putLong(id.low())
+                .putLong(entityId.high()).putLong(entityId.low())
+                .put((byte) (component.unique() ? 1 : 0))
+                .putInt(component.version())
+                .putInt(codec.type(component.data()))
+                .putInt(data.length)
+                .put(data);
+    }
+
+    private List<Component<D>> decodeTransaction(ByteBuffer payload) {
+        var count = payload.getInt();
+        var components = new ArrayList<Component<D>>(count);
+        for (int i = 0; i < count; i++) {
+            components.add(getComponent(payload));
+        }
+        return components;
+    }
+
+    private Component<D> getComponent(ByteBuffer buffer) {
+        var id = new CompactId(buffer.getLong(), buffer.getLong());
+        var entityId = new CompactId(buffer.getLong(), buffer.getLong());
+        var unique = buffer.get() == 1;
+        var version = buffer.getInt();
+        var type = buffer.getInt();
+        var length = buffer.getInt();
+        var data = codec.decode(type, buffer.slice(buffer.position(), length));
+        buffer.position(buffer.position() + length);
+        return new Component<>(id, entityId, data, unique, version);
+    }
+
+    private Path snapshotPath(int segment) {
+        return directory.resolve("snapshot-%010d".formatted(segment));
+    }
+
+    private Optional<Integer> latestSnapshot() throws IOException {
+        return snapshotSegments().stream().max(Integer::compare);
+    }
+
+    private List<Integer> snapshotSegments() throws IOException {
+        var segments = new ArrayList<Integer>();
+        try (var files = Files.list(directory)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                var matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return segments;
+    }
+
+    private void deleteSnapshotsBefore(int segment) throws IOException {
+        for (var existing : snapshotSegments()) {
+            if (existing < segment) {
+                Files.deleteIfExists(snapshotPath(existing));
+            }
+        }
+    }
+
+    // magic, format, sequence and count, then sequence and encoded component per entry, then the CRC32C
+    // of everything before it. Written to a temporary file and renamed, a crash leaves the old snapshot.
+    private void writeSnapshot(int segment, List<Change<D>> changes, long sequence) throws IOException {
+        var temporary = directory.resolve("snapshot.tmp");
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var crc = new CRC32C();
+            var buffered = new BufferedOutputStream(Channels.newOutputStream(channel));
+            var out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+            out.writeLong(sequence);
+            out.writeInt(changes.size());
+            for (var change : changes) {
+                var data = codec.encode(change.component().data());
+                var buffer = ByteBuffer.allocate(COMPONENT_HEADER_SIZE + data.length);
+                putComponent(buffer, change.component(), data);
+                out.writeLong(change.sequence());
+                out.writeInt(buffer.capacity());
+                out.write(buffer.array());
+            }
+            out.flush();
+            var trailer = new DataOutputStream(buffered);
+            trailer.writeInt((int) crc.getValue());
+            trailer.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath(segment), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private int loadSnapshot(Path path) throws IOException {
+        var crc = new CRC32C();
+        try (var buffered = new BufferedInputStream(Files.newInputStream(path));
+             var in = new DataInputStream(new CheckedInputStream(buffered, crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+                throw new IllegalStateException("Not a snapshot: " + path);
+            }
+            var sequence = in.readLong();
+            var count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                var componentSequence = in.readLong();
+                var bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                registry.restore(getComponent(ByteBuffer.wrap(bytes)), componentSequence);
+            }
+            var expected = (int) crc.getValue();
+            if (new DataInputStream(buffered).readInt() != expected) {
+                throw new IllegalStateException("Snapshot checksum mismatch: " + path);
+            }
+            loggedSequence = sequence;
+            return count;
+        } catch (EOFException e) {
+            throw new IllegalStateException("Truncated snapshot: " + path, e);
+        }
+    }
+}
@@ -2,18 +2,403 @@ package com.jt.ecs.inmemory;
 
 import com.jt.ecs.api.*;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
 
 public class InMemoryRegistry<D> implements Registry<D> {
+    private final static int DEFAULT_STRIPES = 256;
+    private final static long DEFAULT_FEED_RETENTION = 1_000_000;
+
+    private record IndexKey(String name, String key) {}
+
+    private final ConcurrentHashMap<CompactId, Entity<D>> entities = new ConcurrentHashMap<>();
+    // unique component data is matched by equals/hashCode, so it must be a value type (e.g. a record)
+    private final ConcurrentHashMap<D, Id> uniqueKeys = new ConcurrentHashMap<>();
+    private final Set<CompactId> componentIds = ConcurrentHashMap.newKeySet();
+    private final ConcurrentSkipListMap<Long, Component<D>> changes = new ConcurrentSkipListMap<>();
+    // Writes take their sequences from the counter without a lock and add their changes concurrently. The feed
+    // only shows changes up to publishedSequence, which a write moves past its own sequences once every lower one
+    // is published, so the feed never exposes a gap that fills later.
+    private final AtomicLong assignedSequence = new AtomicLong();
+    private volatile long publishedSequence;
+    // the feed sequence of every current component, and {sequence, superseded at} of replaced ones still in the
+    // feed, oldest first. The deque is only touched by the write that is publishing.
+    private final ConcurrentHashMap<CompactId, Long> changeSequences = new ConcurrentHashMap<>();
+    private final ArrayDeque<long[]> superseded = new ArrayDeque<>();
+    private final long feedRetention;
+    private final ReentrantLock[] locks;
+    private final Map<String, SecondaryIndex<D>> indexes = new HashMap<>();
+    private final Map<Class<?>, List<SecondaryIndex<D>>> indexesByType = new HashMap<>();
+    private final ConcurrentHashMap<IndexKey, ConcurrentSkipListSet<CompactId>> indexEntries = new ConcurrentHashMap<>();
+
+    public InMemoryRegistry() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public InMemoryRegistry(int stripes) {
+        this(stripes, List.of());
+    }
+
+    public InMemoryRegistry(List<SecondaryIndex<D>> indexes) {
+        this(DEFAULT_STRIPES, indexes);
+    }
+
+    public InMemoryRegistry(int stripes, List<SecondaryIndex<D>> indexes) {
+        this(stripes, indexes, DEFAULT_FEED_RETENTION);
+    }
+
+    // A replaced component leaves the change feed once feedRetention more changes were published after the one
+    // that replaced it, like the versions Maintenance prunes from the component table. A cursor less than that
+    // far behind sees every change, one further behind may skip replaced versions but still gets the current one.
+    public InMemoryRegistry(int stripes, List<SecondaryIndex<D>> indexes, long feedRetention) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Stripes must be a positive power of two: " + stripes);
+        }
+        if (feedRetention < 0) {
+            throw new IllegalArgumentException("Feed retention must not be negative: " + feedRetention);
+        }
+        this.feedRetention = feedRetention;
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        for (var index : indexes) {
+            if (this.indexes.putIfAbsent(index.name(), index) != null) {
+                throw new IllegalArgumentException("Duplicate index name: " + index.name());
+            }
+            indexesByType.computeIfAbsent(index.type(), k -> new ArrayList<>()).add(index);
+        }
+    }
+
+    private static CompactId key(Id id) {
+        return CompactId.of(id);
+    }
+
+    private int stripe(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (locks.length - 1);
+    }
+
+    private int[] stripesFor(List<Component<D>> components) {
+        var stripes = new TreeSet<Integer>();
+        for (var component : components) {
+            stripes.add(stripe(key(component.id())));
+            stripes.add(stripe(key(component.entityId())));
+            if (component.unique()) {
+                stripes.add(stripe(component.data()));
+            }
+        }
+        return stripes.stream().mapToInt(Integer::intValue).toArray();
+    }
 
     @Override
     public void execute(Transaction<D> transaction) {
-        var components = transaction.execute();
-        components.forEach(System.out::println);
+        write(transaction.execute(), (components, lastSequence) -> {});
+    }
+
+    // published runs once every lower sequence is published and before the write's own changes are, one write at
+    // a time, so it sees every write in sequence order. It gets the sequence of the last component.
+    void write(List<Component<D>> components, ObjLongConsumer<List<Component<D>>> published) {
+        if (components.isEmpty()) {
+            return;
+        }
+
+        var stripes = stripesFor(components);
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+        try {
+            validate(components);
+            apply(components, published);
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    private void validate(List<Component<D>> components) {
+        var newComponentIds = new HashSet<CompactId>();
+        var newTypes = new HashSet<List<Object>>();
+        var newUniqueKeys = new HashSet<D>();
+
+        for (var component : components) {
+            var componentId = key(component.id());
+            if (componentIds.contains(componentId) || !newComponentIds.add(componentId)) {
+                throw new DuplicateEntryException("Duplicate component id: " + componentId);
+            }
+
+            var entityId = key(component.entityId());
+            var type = component.dataType();
+            var current = current(entities.get(entityId), type);
+            var expectedVersion = component.version() - 1;
+            if ((current == null ? expectedVersion != -1 : current.version() != expectedVersion)
+                    || !newTypes.add(List.of(entityId, type))) {
+                throw new DuplicateComponentException(expectedVersion == -1
+                        ? "Duplicate component " + type.getName() + " for entity " + entityId
+                        : "Version " + expectedVersion + " of " + type.getName() + " is not current for entity " + entityId);
+            }
+
+            // an update may keep the unique data of the component it replaces
+            var keepsKey = current != null && current.unique() && component.data().equals(current.data());
+            if (component.unique() && ((uniqueKeys.containsKey(component.data()) && !keepsKey) || !newUniqueKeys.add(component.data()))) {
+                throw new DuplicateUniqueDataException("Duplicate unique data: " + component.data());
+            }
+        }
+    }
+
+    private void apply(List<Component<D>> components, ObjLongConsumer<List<Component<D>>> published) {
+        var byEntity = new LinkedHashMap<CompactId, List<Component<D>>>();
+        var replacedIds = new ArrayList<CompactId>();
+        for (var component : components) {
+            componentIds.add(key(component.id()));
+            byEntity.computeIfAbsent(key(component.entityId()), k -> new ArrayList<>()).add(component);
+        }
+
+        for (var entry : byEntity.entrySet()) {
+            var added = entry.getValue();
+            var existing = entities.get(entry.getKey());
+            if (existing == null) {
+                entities.put(entry.getKey(), new Entity<>(added.getFirst().entityId(), List.copyOf(added)));
+                continue;
+            }
+
+            var replaced = new HashSet<Class<?>>();
+            for (var component : added) {
+                if (component.version() > 0) {
+                    replaced.add(component.dataType());
+                }
+            }
+            var componentList = new ArrayList<Component<D>>(existing.componentList().size() + added.size());
+            for (var component : existing.componentList()) {
+                if (!replaced.contains(component.dataType())) {
+                    componentList.add(component);
+                    continue;
+                }
+                replacedIds.add(key(component.id()));
+                if (component.unique()) {
+                    uniqueKeys.computeIfPresent(component.data(), (k, owner) -> key(owner).equals(entry.getKey()) ? null : owner);
+                }
+            }
+            componentList.addAll(added);
+            entities.put(entry.getKey(), new Entity<>(existing.id(), Collections.unmodifiableList(componentList)));
+        }
+
+        for (var component : components) {
+            if (component.unique()) {
+                uniqueKeys.put(component.data(), component.entityId());
+            }
+            for (var index : indexesByType.getOrDefault(component.dataType(), List.of())) {
+                var key = index.keyOf(component.data());
+                if (key != null) {
+                    indexEntries.computeIfAbsent(new IndexKey(index.name(), key), k -> new ConcurrentSkipListSet<>())
+                            .add(key(component.entityId()));
+                }
+            }
+        }
+
+        var last = assignedSequence.addAndGet(components.size());
+        var changeSequence = last - components.size() + 1;
+        var predecessor = changeSequence - 1;
+        for (var component : components) {
+            changes.put(changeSequence, component);
+            changeSequences.put(key(component.id()), changeSequence++);
+        }
+        awaitPublished(predecessor);
+        try {
+            supersede(replacedIds, last);
+            published.accept(components, last);
+        } finally {
+            publishedSequence = last;
+        }
+    }
+
+    // the writes ahead only add their changes and run published, the wait is short
+    private void awaitPublished(long predecessor) {
+        for (int spins = 0; publishedSequence != predecessor; spins++) {
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    // by the publishing write, or by restore
+    private void supersede(List<CompactId> replacedIds, long supersededAt) {
+        for (var id : replacedIds) {
+            var replacedSequence = changeSequences.remove(id);
+            if (replacedSequence != null) {
+                superseded.add(new long[]{replacedSequence, supersededAt});
+            }
+        }
+        while (!superseded.isEmpty() && superseded.peek()[1] <= supersededAt - feedRetention) {
+            changes.remove(superseded.poll()[0]);
+        }
+    }
+
+    // adds a component recovered from a snapshot, bypassing validation. Single threaded, before any write.
+    void restore(Component<D> component, long componentSequence) {
+        var entityId = key(component.entityId());
+        componentIds.add(key(component.id()));
+        var existing = entities.get(entityId);
+        var componentList = new ArrayList<Component<D>>();
+        var replacedIds = new ArrayList<CompactId>();
+        if (existing != null) {
+            for (var other : existing.componentList()) {
+                if (other.dataType() != component.dataType()) {
+                    componentList.add(other);
+                } else {
+                    replacedIds.add(key(other.id()));
+                }
+            }
+        }
+        componentList.add(component);
+        entities.put(entityId, new Entity<>(existing == null ? component.entityId() : existing.id(), Collections.unmodifiableList(componentList)));
+        if (component.unique()) {
+            uniqueKeys.put(component.data(), component.entityId());
+        }
+        for (var index : indexesByType.getOrDefault(component.dataType(), List.of())) {
+            var key = index.keyOf(component.data());
+            if (key != null) {
+                indexEntries.computeIfAbsent(new IndexKey(index.name(), key), k -> new ConcurrentSkipListSet<>()).add(entityId);
+            }
+        }
+        changes.put(componentSequence, component);
+        changeSequences.put(key(component.id()), componentSequence);
+        publishedSequence = assignedSequence.accumulateAndGet(componentSequence, Math::max);
+        supersede(replacedIds, componentSequence);
+    }
+
+    // drops changes up to upTo that a later change up to upTo replaced, and returns the rest in sequence
+    // order: the latest component of every entity and type as of upTo
+    List<Change<D>> compactChanges(long upTo) {
+        var latest = new LinkedHashMap<List<Object>, Change<D>>();
+        for (var entry : changes.headMap(upTo, true).entrySet()) {
+            var component = entry.getValue();
+            var slot = List.<Object>of(key(component.entityId()), component.dataType());
+            var replaced = latest.remove(slot);
+            if (replaced != null) {
+                changes.remove(replaced.sequence());
+            }
+            latest.put(slot, new Change<>(entry.getKey(), component));
+        }
+        return List.copyOf(latest.values());
     }
 
     @Override
     public Optional<Entity<D>> execute(Query.SingletonQuery<D> query) {
-        return Optional.empty();
+        return switch (query) {
+            case Query.SingletonQuery.ByEntityIdQuery<D> q -> find(q.id(), q.selectedTypes());
+            case Query.SingletonQuery.ByUniqueKey<D> q -> {
+                var entityId = uniqueKeys.get(q.keyData());
+                yield entityId == null ? Optional.empty() : find(entityId, q.selectedTypes());
+            }
+        };
+    }
+
+    @Override
+    public Map<Id, Entity<D>> execute(Query.MultiQuery<D> query) {
+        return switch (query) {
+            case Query.MultiQuery.ByEntityIdsQuery<D> q -> {
+                var result = new LinkedHashMap<Id, Entity<D>>();
+                for (var id : q.ids()) {
+                    find(id, q.selectedTypes()).ifPresent(entity -> result.putIfAbsent(id, entity));
+                }
+                yield result;
+            }
+        };
+    }
+
+    @Override
+    public Page<D> execute(Query.PagedQuery<D> query) {
+        return switch (query) {
+            case Query.PagedQuery.ByIndexQuery<D> q -> find(q);
+        };
+    }
+
+    @Override
+    public ChangeBatch<D> changesSince(long cursor, List<Class<? extends D>> types, int batchSize) {
+        var upTo = publishedSequence;
+        if (cursor >= upTo) {
+            return new ChangeBatch<>(List.of(), cursor);
+        }
+        var batch = new ArrayList<Change<D>>(Math.min(batchSize, 1024));
+        var next = cursor;
+        // only selected components count toward batchSize, like the LIMIT of the mysql feed. The cursor moves past
+        // the skipped ones, and the scan ends at the batch's last change so none is skipped without being returned
+        for (var entry : changes.subMap(cursor, false, upTo, true).entrySet()) {
+            next = entry.getKey();
+            if (types.isEmpty() || types.contains(entry.getValue().dataType())) {
+                batch.add(new Change<>(entry.getKey(), entry.getValue()));
+                if (batch.size() == batchSize) {
+                    break;
+                }
+            }
+        }
+        return new ChangeBatch<>(batch, next);
+    }
+
+    private static <D> Component<D> current(Entity<D> entity, Class<?> type) {
+        if (entity == null || !entity.hasComponent(type)) {
+            return null;
+        }
+        for (var component : entity.componentList()) {
+            if (component.dataType() == type) {
+                return component;
+            }
+        }
+        return null;
+    }
+
+    private Optional<Entity<D>> find(Id id, List<Class<? extends D>> selectedTypes) {
+        var entity = entities.get(key(id));
+        if (entity == null) {
+            return Optional.empty();
+        }
+        if (selectedTypes.isEmpty()) {
+            return Optional.of(entity);
+        }
+
+        var componentList = new ArrayList<Component<D>>();
+        for (var component : entity.componentList()) {
+            if (selectedTypes.contains(component.dataType())) {
+                componentList.add(component);
+            }
+        }
+        if (componentList.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Entity<>(entity.id(), Collections.unmodifiableList(componentList)));
+    }
+
+    private Page<D> find(Query.PagedQuery.ByIndexQuery<D> query) {
+        var index = indexes.get(query.indexName());
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown index: " + query.indexName());
+        }
+        var entries = indexEntries.get(new IndexKey(index.name(), query.key()));
+        if (entries == null) {
+            return new Page<>(List.of(), null);
+        }
+
+        var candidates = query.after() == null ? entries : entries.tailSet(key(query.after()), false);
+        var iterator = candidates.iterator();
+        var result = new ArrayList<Entity<D>>();
+        CompactId last = null;
+        for (int scanned = 0; scanned < query.limit() && iterator.hasNext(); scanned++) {
+            last = iterator.next();
+            var entity = entities.get(last);
+            var component = entity == null ? null : entity.getComponentOrNull(index.type());
+            if (component != null && query.key().equals(index.keyOf(component.data()))) {
+                find(last, query.selectedTypes()).ifPresent(result::add);
+            }
+        }
+        return new Page<>(result, iterator.hasNext() ? last : null);
     }
 }
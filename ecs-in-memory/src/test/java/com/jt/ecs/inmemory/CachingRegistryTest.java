@@ -0,0 +1,182 @@
+package com.jt.ecs.inmemory;
+
+import com.jt.ecs.api.*;
+import com.jt.ecs.inmemory.InMemoryRegistryTest.Data;
+import com.jt.ecs.inmemory.InMemoryRegistryTest.TestId;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingRegistryTest {
+
+    static class CountingRegistry implements Registry<Data> {
+        private final InMemoryRegistry<Data> delegate = new InMemoryRegistry<>();
+        private final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public void execute(Transaction<Data> transaction) {
+            delegate.execute(transaction);
+        }
+
+        @Override
+        public Optional<Entity<Data>> execute(Query.SingletonQuery<Data> query) {
+            reads.incrementAndGet();
+            return delegate.execute(query);
+        }
+
+        @Override
+        public Map<Id, Entity<Data>> execute(Query.MultiQuery<Data> query) {
+            reads.incrementAndGet();
+            return delegate.execute(query);
+        }
+
+        @Override
+        public Page<Data> execute(Query.PagedQuery<Data> query) {
+            return delegate.execute(query);
+        }
+
+        @Override
+        public ChangeBatch<Data> changesSince(long cursor, List<Class<? extends Data>> types, int batchSize) {
+            return delegate.changesSince(cursor, types, batchSize);
+        }
+    }
+
+    private static Transaction<Data> transaction(Id entityId, String key, int value) {
+        var components = List.<Component<Data>>of(
+                new Component<>(TestId.random(), entityId, new Data.Key(key), true),
+                new Component<>(TestId.random(), entityId, new Data.Value(value)));
+        return () -> components;
+    }
+
+    @Test
+    public void testReadThroughAndSelectedTypes() {
+        var backing = new CountingRegistry();
+        var registry = new CachingRegistry<>(backing, 100, Duration.ofMinutes(1));
+        var entityId = TestId.random();
+        registry.execute(transaction(entityId, "key", 1));
+
+        assertEquals(2, registry.execute(Query.byEntityId(entityId)).orElseThrow().componentList().size());
+        var narrowed = registry.execute(Query.byEntityId(entityId, List.of(Data.Value.class))).orElseThrow();
+        assertEquals(1, narrowed.componentList().size());
+        assertEquals(1, narrowed.getComponent(Data.Value.class).orElseThrow().data().value());
+        assertEquals(entityId, registry.execute(Query.<Data>byUniqueKey(new Data.Key("key"))).orElseThrow().id());
+        assertEquals(1, registry.execute(Query.<Data>byEntityIds(List.of(entityId))).size());
+
+        // the unique-key lookup resolves through the delegate once, everything else is served from the cache
+        assertEquals(2, backing.reads.get());
+        assertEquals(1, registry.entityCacheStats().misses());
+        assertEquals(2, registry.entityCacheStats().hits());
+    }
+
+    @Test
+    public void testWriteInvalidatesEntity() {
+        var backing = new CountingRegistry();
+        var registry = new CachingRegistry<>(backing, 100, Duration.ofMinutes(1));
+        var entityId = TestId.random();
+        registry.execute(() -> List.of(new Component<>(TestId.random(), entityId, new Data.Value(1))));
+        assertEquals(1, registry.execute(Query.byEntityId(entityId)).orElseThrow().componentList().size());
+
+        registry.execute(() -> List.of(new Component<>(TestId.random(), entityId, new Data.Key("key"), true)));
+        assertEquals(2, registry.execute(Query.byEntityId(entityId)).orElseThrow().componentList().size());
+        assertEquals(2, backing.reads.get());
+    }
+
+    @Test
+    public void testWriteDuringLoadOnlyBlocksCachingItsStripe() {
+        var entityId = TestId.random();
+        var otherStripeId = TestId.random();
+        while (CachingRegistry.stripe(CompactId.of(otherStripeId)) == CachingRegistry.stripe(CompactId.of(entityId))) {
+            otherStripeId = TestId.random();
+        }
+        var concurrentWrite = new AtomicReference<Transaction<Data>>();
+        var registryRef = new AtomicReference<CachingRegistry<Data>>();
+        CountingRegistry backing = new CountingRegistry() {
+            @Override
+            public Optional<Entity<Data>> execute(Query.SingletonQuery<Data> query) {
+                var write = concurrentWrite.getAndSet(null);
+                if (write != null) {
+                    registryRef.get().execute(write);
+                }
+                return super.execute(query);
+            }
+        };
+        var registry = new CachingRegistry<>(backing, 100, Duration.ofMinutes(1));
+        registryRef.set(registry);
+        registry.execute(transaction(entityId, "key", 1));
+
+        // a write to an entity of another stripe while the entity loads leaves it cacheable
+        concurrentWrite.set(transaction(otherStripeId, "other", 2));
+        registry.execute(Query.byEntityId(entityId));
+        registry.execute(Query.byEntityId(entityId));
+        assertEquals(1, backing.reads.get());
+
+        // a write to the entity itself does not
+        var otherEntityId = TestId.random();
+        registry.execute(() -> List.of(new Component<>(TestId.random(), otherEntityId, new Data.Value(3))));
+        concurrentWrite.set(() -> List.of(new Component<>(TestId.random(), otherEntityId, new Data.Key("third"), true)));
+        registry.execute(Query.byEntityId(otherEntityId));
+        registry.execute(Query.byEntityId(otherEntityId));
+        assertEquals(3, backing.reads.get());
+    }
+
+    @Test
+    public void testWriteBetweenEpochCheckAndPutIsNotCached() {
+        var backing = new CountingRegistry();
+        var entityId = TestId.random();
+        var concurrentWrite = new AtomicReference<Runnable>();
+        var entities = new BoundedCache<CompactId, Entity<Data>>(16, Duration.ofMinutes(1)) {
+            @Override
+            void put(CompactId key, Entity<Data> value) {
+                var write = concurrentWrite.getAndSet(null);
+                if (write != null) {
+                    write.run();
+                }
+                super.put(key, value);
+            }
+        };
+        var registry = new CachingRegistry<>(backing, entities, new BoundedCache<>(16, Duration.ofMinutes(1)));
+        registry.execute(() -> List.of(new Component<>(TestId.random(), entityId, new Data.Value(1))));
+
+        // the write finishes after the load passed its epoch check but before its put
+        concurrentWrite.set(() -> registry.execute(() -> List.of(new Component<>(TestId.random(), entityId, new Data.Key("key"), true))));
+        assertEquals(1, registry.execute(Query.byEntityId(entityId)).orElseThrow().componentList().size());
+        assertEquals(2, registry.execute(Query.byEntityId(entityId)).orElseThrow().componentList().size());
+        assertEquals(2, backing.reads.get());
+    }
+
+    @Test
+    public void testSizeAndTtlEviction() {
+        var backing = new CountingRegistry();
+        var now = new AtomicLong();
+        var registry = new CachingRegistry<>(backing,
+                new BoundedCache<>(16, Duration.ofSeconds(1), now::get),
+                new BoundedCache<>(16, Duration.ofSeconds(1), now::get));
+        var entityId = TestId.random();
+        registry.execute(transaction(entityId, "key", 1));
+
+        registry.execute(Query.byEntityId(entityId));
+        registry.execute(Query.byEntityId(entityId));
+        assertEquals(1, backing.reads.get());
+
+        now.addAndGet(Duration.ofSeconds(2).toNanos());
+        registry.execute(Query.byEntityId(entityId));
+        assertEquals(2, backing.reads.get());
+        assertEquals(1, registry.entityCacheStats().evictions());
+
+        for (int i = 0; i < 64; i++) {
+            var otherId = TestId.random();
+            registry.execute(transaction(otherId, "key" + i, i));
+            registry.execute(Query.byEntityId(otherId));
+        }
+        assertTrue(registry.entityCacheStats().size() <= 16);
+        assertTrue(registry.entityCacheStats().evictions() > 1);
+    }
+}
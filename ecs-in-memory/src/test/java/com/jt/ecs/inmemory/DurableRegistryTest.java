@@ -0,0 +1,188 @@
+package com.jt.ecs.inmemory;
+
+import com.jt.ecs.api.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DurableRegistryTest {
+
+    sealed interface Data {
+        record Key(String key) implements Data {}
+        record Value(int value) implements Data {}
+    }
+
+    static class Codec implements ComponentCodec<Data> {
+        @Override
+        public int type(Data data) {
+            return switch (data) {
+                case Data.Key k -> 1;
+                case Data.Value v -> 2;
+            };
+        }
+
+        @Override
+        public byte[] encode(Data data) {
+            return switch (data) {
+                case Data.Key k -> k.key().getBytes(StandardCharsets.UTF_8);
+                case Data.Value v -> ByteBuffer.allocate(Integer.BYTES).putInt(v.value()).array();
+            };
+        }
+
+        @Override
+        public Data decode(int type, ByteBuffer data) {
+            return switch (type) {
+                case 1 -> new Data.Key(StandardCharsets.UTF_8.decode(data).toString());
+                case 2 -> new Data.Value(data.getInt());
+                default -> throw new IllegalArgumentException("Unknown type: " + type);
+            };
+        }
+    }
+
+    private static Id randomId() {
+        var uuid = UUID.randomUUID();
+        return new CompactId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    private static Transaction<Data> transaction(Id entityId, String key, int value) {
+        var components = List.<Component<Data>>of(
+                new Component<>(randomId(), entityId, new Data.Key(key), true),
+                new Component<>(randomId(), entityId, new Data.Value(value)));
+        return () -> components;
+    }
+
+    private static DurableRegistry<Data> open(Path directory) {
+        return DurableRegistry.of(directory, new Codec())
+                .withSegmentSize(64 * 1024)
+                .withCompactionThreshold(Long.MAX_VALUE)
+                .build();
+    }
+
+    @Test
+    public void testRecoversFromLog(@TempDir Path directory) {
+        var entityId = randomId();
+        try (var registry = open(directory)) {
+            registry.execute(transaction(entityId, "key", 1));
+            var current = registry.execute(Query.byEntityId(entityId)).orElseThrow().componentOrNull(Data.Value.class);
+            registry.execute(() -> List.of(current.nextVersion(randomId(), new Data.Value(2))));
+        }
+
+        try (var registry = open(directory)) {
+            assertEquals(2, registry.recoveryStats().replayedTransactions());
+            var entity = registry.execute(Query.<Data>byUniqueKey(new Data.Key("key"))).orElseThrow();
+            assertEquals(entityId, entity.id());
+            assertEquals(2, entity.getDataOrNull(Data.Value.class).value());
+            assertEquals(1, entity.getComponentOrNull(Data.Value.class).version());
+            assertThrows(DuplicateUniqueDataException.class, () -> registry.execute(transaction(randomId(), "key", 3)));
+            assertEquals(3, registry.changesSince(0, List.of(), 10).changes().size());
+        }
+    }
+
+    @Test
+    public void testRecoversFromSnapshotAndTail(@TempDir Path directory) throws IOException {
+        var entityIds = new ArrayList<Id>();
+        try (var registry = open(directory)) {
+            for (int i = 0; i < 1000; i++) {
+                var entityId = randomId();
+                entityIds.add(entityId);
+                registry.execute(transaction(entityId, "key-" + i, i));
+            }
+            var first = registry.execute(Query.byEntityId(entityIds.getFirst())).orElseThrow().componentOrNull(Data.Value.class);
+            registry.execute(() -> List.of(first.nextVersion(randomId(), new Data.Value(-1))));
+            registry.compact();
+            registry.execute(transaction(randomId(), "after-snapshot", 0));
+        }
+
+        try (var registry = open(directory)) {
+            assertEquals(2000, registry.recoveryStats().snapshotComponents());
+            assertEquals(1, registry.recoveryStats().replayedTransactions());
+            assertEquals(1000, registry.execute(Query.byEntityIds(entityIds)).size());
+            assertEquals(-1, registry.execute(Query.byEntityId(entityIds.getFirst())).orElseThrow().getDataOrNull(Data.Value.class).value());
+            assertTrue(registry.execute(Query.<Data>byUniqueKey(new Data.Key("after-snapshot"))).isPresent());
+            // the replaced version is gone from the change feed, the sequence keeps counting
+            var changes = registry.changesSince(0, List.of(), 5000);
+            assertEquals(2002, changes.changes().size());
+            assertEquals(2003, changes.cursor());
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).count());
+        }
+    }
+
+    @Test
+    public void testConcurrentWritesWithBackgroundCompaction(@TempDir Path directory) throws ExecutionException, InterruptedException {
+        try (var registry = DurableRegistry.of(directory, new Codec())
+                .withSegmentSize(16 * 1024)
+                .withCompactionThreshold(32 * 1024)
+                .build()) {
+            try (var executor = Executors.newFixedThreadPool(8)) {
+                var futures = new ArrayList<Future<?>>();
+                for (int t = 0; t < 8; t++) {
+                    var thread = t;
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < 250; i++) {
+                            registry.execute(transaction(randomId(), thread + "-" + i, i));
+                        }
+                    }));
+                }
+                for (var future : futures) {
+                    future.get();
+                }
+            }
+        }
+
+        try (var registry = open(directory)) {
+            assertTrue(registry.recoveryStats().snapshotComponents() > 0);
+            assertEquals(4000, registry.recoveryStats().snapshotComponents() + 2 * registry.recoveryStats().replayedTransactions());
+            for (int t = 0; t < 8; t++) {
+                assertTrue(registry.execute(Query.<Data>byUniqueKey(new Data.Key(t + "-249"))).isPresent());
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatesTornTail(@TempDir Path directory) throws IOException {
+        try (var registry = open(directory)) {
+            registry.execute(transaction(randomId(), "kept", 1));
+        }
+        // a record header whose payload never made it to disk
+        try (var channel = FileChannel.open(directory.resolve("log-0000000000"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var header = ByteBuffer.allocate(Integer.BYTES);
+            var position = 0L;
+            while (true) {
+                header.clear();
+                channel.read(header, position);
+                var length = header.flip().getInt();
+                if (length == 0) {
+                    break;
+                }
+                position += 8 + length;
+            }
+            channel.write(ByteBuffer.allocate(12).putInt(100).putInt(42).putInt(7).flip(), position);
+        }
+
+        try (var registry = open(directory)) {
+            assertEquals(1, registry.recoveryStats().replayedTransactions());
+            registry.execute(transaction(randomId(), "appended", 2));
+        }
+        try (var registry = open(directory)) {
+            assertEquals(2, registry.recoveryStats().replayedTransactions());
+            assertTrue(registry.execute(Query.<Data>byUniqueKey(new Data.Key("appended"))).isPresent());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.jt.ecs.inmemory;
+
+import com.jt.ecs.api.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryRegistryTest {
+
+    sealed interface Data {
+        record Key(String key) implements Data {}
+        record Value(int value) implements Data {}
+    }
+
+    record TestId(byte[] bytes) implements Id {
+        static TestId random() {
+            var uuid = UUID.randomUUID();
+            var bb = ByteBuffer.allocate(16);
+            bb.putLong(uuid.getMostSignificantBits());
+            bb.putLong(uuid.getLeastSignificantBits());
+            return new TestId(bb.array());
+        }
+    }
+
+    private static Transaction<Data> transaction(Id entityId, String key, int value) {
+        var components = List.<Component<Data>>of(
+                new Component<>(TestId.random(), entityId, new Data.Key(key), true),
+                new Component<>(TestId.random(), entityId, new Data.Value(value)));
+        return () -> components;
+    }
+
+    @Test
+    public void testFindByEntityIdAndUniqueKey() {
+        var registry = new InMemoryRegistry<Data>();
+        var entityId = TestId.random();
+        registry.execute(transaction(entityId, "key", 1));
+
+        // a different Id instance with the same bytes must resolve the same entity
+        var entity = registry.execute(Query.byEntityId(new TestId(entityId.bytes().clone()))).orElseThrow();
+        assertEquals(2, entity.componentList().size());
+        assertEquals(1, entity.getComponent(Data.Value.class).orElseThrow().data().value());
+
+        var narrowed = registry.execute(Query.byEntityId(entityId, List.of(Data.Key.class))).orElseThrow();
+        assertEquals(1, narrowed.componentList().size());
+        assertTrue(narrowed.getComponent(Data.Value.class).isEmpty());
+
+        var byKey = registry.execute(Query.<Data>byUniqueKey(new Data.Key("key"))).orElseThrow();
+        assertArrayEquals(entityId.bytes(), byKey.id().bytes());
+        assertTrue(registry.execute(Query.<Data>byUniqueKey(new Data.Key("missing"))).isEmpty());
+    }
+
+    @Test
+    public void testSessionDelegates() {
+        var registry = new InMemoryRegistry<Data>();
+        var entityId = TestId.random();
+        try (var session = registry.session()) {
+            session.execute(transaction(entityId, "key", 1));
+            assertTrue(session.execute(Query.<Data>byUniqueKey(new Data.Key("key"))).isPresent());
+        }
+        assertEquals(2, registry.execute(Query.byEntityId(entityId)).orElseThrow().componentList().size());
+    }
+
+    @Test
+    public void testVersionedUpdates() {
+        var registry = new InMemoryRegistry<Data>();
+        var entityId = TestId.random();
+        registry.execute(transaction(entityId, "key", 1));
+
+        var current = registry.execute(Query.byEntityId(entityId)).orElseThrow().componentOrNull(Data.Value.class);
+        var update = current.nextVersion(TestId.random(), new Data.Value(2));
+        registry.execute(() -> List.of(update));
+
+        var entity = registry.execute(Query.byEntityId(entityId)).orElseThrow();
+        assertEquals(2, entity.componentList().size());
+        assertEquals(2, entity.getDataOrNull(Data.Value.class).value());
+        assertEquals(1, entity.getComponentOrNull(Data.Value.class).version());
+
+        // a second update based on the replaced version loses
+        var stale = current.nextVersion(TestId.random(), new Data.Value(3));
+        assertThrows(DuplicateComponentException.class, () -> registry.execute(() -> List.of(stale)));
+
+        // replacing a unique component releases its old data
+        var key = entity.componentOrNull(Data.Key.class);
+        registry.execute(() -> List.of(key.nextVersion(TestId.random(), new Data.Key("renamed"))));
+        assertTrue(registry.execute(Query.<Data>byUniqueKey(new Data.Key("key"))).isEmpty());
+        assertArrayEquals(entityId.bytes(), registry.execute(Query.<Data>byUniqueKey(new Data.Key("renamed"))).orElseThrow().id().bytes());
+        registry.execute(transaction(TestId.random(), "key", 4));
+
+        // so does replacing it with a component that isn't unique
+        var renamed = registry.execute(Query.byEntityId(entityId)).orElseThrow().componentOrNull(Data.Key.class);
+        registry.execute(() -> List.of(new Component<Data>(TestId.random(), entityId, new Data.Key("plain"), false, renamed.version() + 1)));
+        assertTrue(registry.execute(Query.<Data>byUniqueKey(new Data.Key("renamed"))).isEmpty());
+        registry.execute(transaction(TestId.random(), "renamed", 5));
+    }
+
+    @Test
+    public void testSecondaryIndex() {
+        var parity = SecondaryIndex.<Data, Data.Value>of("parity", Data.Value.class, v -> v.value() % 2 == 0 ? "even" : "odd");
+        var registry = new InMemoryRegistry<>(List.of(parity));
+        for (int i = 0; i < 10; i++) {
+            registry.execute(transaction(TestId.random(), "key-" + i, i));
+        }
+
+        var first = registry.execute(Query.byIndex(parity, "even", 3));
+        assertEquals(3, first.entities().size());
+        assertTrue(first.hasNext());
+        var second = registry.execute(Query.byIndex(parity, "even", 3).withAfter(first.next()));
+        assertEquals(2, second.entities().size());
+        assertFalse(second.hasNext());
+
+        var even = registry.stream(Query.byIndex(parity, "even", 2, List.of(Data.Value.class)))
+                .map(entity -> entity.getDataOrNull(Data.Value.class).value())
+                .sorted()
+                .toList();
+        assertEquals(List.of(0, 2, 4, 6, 8), even);
+        assertTrue(registry.execute(Query.byIndex(parity, "none", 2)).entities().isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.execute(Query.byIndex(SecondaryIndex.<Data, Data.Key>of("missing", Data.Key.class, Data.Key::key), "x", 1)));
+    }
+
+    @Test
+    public void testDuplicates() {
+        var registry = new InMemoryRegistry<Data>();
+        var entityId = TestId.random();
+        registry.execute(transaction(entityId, "key", 1));
+
+        assertThrows(DuplicateUniqueDataException.class, () -> registry.execute(transaction(TestId.random(), "key", 2)));
+        assertThrows(DuplicateComponentException.class, () -> registry.execute(transaction(entityId, "other", 2)));
+
+        var componentId = TestId.random();
+        registry.execute(() -> List.of(new Component<>(componentId, TestId.random(), new Data.Value(3))));
+        assertThrows(DuplicateEntryException.class,
+                () -> registry.execute(() -> List.of(new Component<>(componentId, TestId.random(), new Data.Value(4)))));
+
+        // failed transactions must not leave partial writes behind
+        assertTrue(registry.execute(Query.<Data>byUniqueKey(new Data.Key("other"))).isEmpty());
+        assertEquals(2, registry.execute(Query.byEntityId(entityId)).orElseThrow().componentList().size());
+    }
+
+    @Test
+    public void testChangesSince() {
+        var registry = new InMemoryRegistry<Data>();
+        for (int i = 0; i < 5; i++) {
+            registry.execute(transaction(TestId.random(), "key" + i, i));
+        }
+
+        var values = new ArrayList<Integer>();
+        var batchSizes = new ArrayList<Integer>();
+        var cursor = 0L;
+        ChangeBatch<Data> batch;
+        do {
+            batch = registry.changesSince(cursor, List.of(Data.Value.class), 2);
+            batchSizes.add(batch.changes().size());
+            for (var change : batch.changes()) {
+                assertTrue(change.sequence() > cursor);
+                values.add(((Data.Value) change.component().data()).value());
+            }
+            cursor = batch.cursor();
+        } while (!batch.changes().isEmpty());
+
+        assertEquals(List.of(0, 1, 2, 3, 4), values);
+        // the keys written between the values don't take up room in a batch
+        assertEquals(List.of(2, 2, 1, 0), batchSizes);
+        assertEquals(10, cursor);
+        assertTrue(registry.changesSince(cursor, List.of(), 10).changes().isEmpty());
+    }
+
+    @Test
+    public void testFeedDropsReplacedVersions() {
+        var registry = new InMemoryRegistry<Data>(16, List.of(), 10);
+        var entityId = TestId.random();
+        registry.execute(() -> List.of(new Component<>(TestId.random(), entityId, new Data.Value(0))));
+        for (int i = 1; i <= 100; i++) {
+            var current = registry.execute(Query.byEntityId(entityId)).orElseThrow().componentOrNull(Data.Value.class);
+            var update = current.nextVersion(TestId.random(), new Data.Value(i));
+            registry.execute(() -> List.of(update));
+        }
+
+        // the versions replaced within the last 10 changes stay, the current one is never dropped
+        var feed = registry.changesSince(0, List.of(), 1000).changes();
+        assertEquals(11, feed.size());
+        assertEquals(101, feed.getLast().sequence());
+        assertEquals(100, ((Data.Value) feed.getLast().component().data()).value());
+        assertEquals(91, registry.changesSince(90, List.of(), 1000).changes().getFirst().sequence());
+    }
+
+    @Test
+    public void testConcurrentUniqueKeyClaims() throws InterruptedException, ExecutionException {
+        var registry = new InMemoryRegistry<Data>();
+        var successes = new AtomicInteger();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            var futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 64; i++) {
+                int value = i;
+                futures.add(executor.submit(() -> {
+                    try {
+                        registry.execute(transaction(TestId.random(), "contended", value));
+                        successes.incrementAndGet();
+                    } catch (DuplicateUniqueDataException ignored) {
+                    }
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        }
+        assertEquals(1, successes.get());
+    }
+
+    @Test
+    public void testConcurrentWritesPublishTheFeedWithoutGaps() throws InterruptedException, ExecutionException {
+        var registry = new InMemoryRegistry<Data>();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            var futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 500; j++) {
+                        registry.execute(transaction(TestId.random(), UUID.randomUUID().toString(), j));
+                    }
+                }));
+            }
+            // a reader tailing the feed while the writes run sees every sequence, in order
+            var cursor = 0L;
+            while (cursor < 8000) {
+                for (var change : registry.changesSince(cursor, List.of(), 100).changes()) {
+                    assertEquals(cursor + 1, change.sequence());
+                    cursor = change.sequence();
+                }
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.jt.ecs.loadgen;
+
+import com.jt.ecs.mysql.ComponentSystem;
+import com.jt.ecs.mysql.SystemId;
+
+public sealed interface LoadData {
+    ComponentSystem<LoadData> SYSTEM = new ComponentSystem<>(new SystemId((byte) 1), new LoadDataMapper());
+
+    record Key(String key) implements LoadData {
+    }
+
+    record Account(String owner, String currency, long balance) implements LoadData {
+    }
+}
@@ -0,0 +1,44 @@
+package com.jt.ecs.loadgen;
+
+import com.jt.ecs.mysql.DataMapper;
+import com.jt.ecs.mysql.TypeAndData;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.List;
+
+class LoadDataMapper implements DataMapper<LoadData> {
+    private final static int KEY = 1;
+    private final static int ACCOUNT = 2;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public TypeAndData map(LoadData data) {
+        var type = switch (data) {
+            case LoadData.Key k -> KEY;
+            case LoadData.Account a -> ACCOUNT;
+        };
+        return new TypeAndData(type, mapper.writeValueAsString(data));
+    }
+
+    @Override
+    public LoadData map(TypeAndData data) {
+        return mapper.readValue(data.data(), resolveClass(data.type()));
+    }
+
+    @Override
+    public List<Integer> resolveTypes(List<Class<? extends LoadData>> classes) {
+        return classes.stream()
+                .map(clazz -> clazz == LoadData.Key.class ? KEY : ACCOUNT)
+                .toList();
+    }
+
+    @Override
+    public Class<? extends LoadData> resolveClass(int type) {
+        return switch (type) {
+            case KEY -> LoadData.Key.class;
+            case ACCOUNT -> LoadData.Account.class;
+            default -> throw new IllegalArgumentException("Unknown type ID: " + type);
+        };
+    }
+}
@@ -0,0 +1,212 @@
+package com.jt.ecs.loadgen;
+
+import com.jt.ecs.api.Component;
+import com.jt.ecs.api.Id;
+import com.jt.ecs.api.LatencyHistogram;
+import com.jt.ecs.api.Query;
+import com.jt.ecs.api.Registry;
+import com.jt.ecs.id.UniqueId;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+// Drives a registry at a fixed rate: operation i is due at start + i / rate, whether or not the ones
+// before it finished. Every operation runs on a virtual thread of its own and its latency is taken from
+// the time it was due, so a backend that stalls is charged for the operations queued behind the stall
+// instead of the load silently backing off (coordinated omission).
+public class LoadGenerator {
+    private final static long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final Registry<LoadData> registry;
+    private final int rate;
+    private final Duration warmup;
+    private final Duration duration;
+    private final OperationMix mix;
+    private final int preload;
+    private final int maxInFlight;
+
+    private LoadGenerator(Builder builder) {
+        this.registry = builder.registry;
+        this.rate = builder.rate;
+        this.warmup = builder.warmup;
+        this.duration = builder.duration;
+        this.mix = builder.mix;
+        this.preload = builder.preload;
+        this.maxInFlight = builder.maxInFlight;
+    }
+
+    public static Builder of(Registry<LoadData> registry) {
+        return new Builder(registry);
+    }
+
+    public static class Builder {
+        private final Registry<LoadData> registry;
+        private int rate = 1000;
+        private Duration warmup = Duration.ofSeconds(10);
+        private Duration duration = Duration.ofSeconds(60);
+        private OperationMix mix = OperationMix.DEFAULT;
+        private int preload = 10_000;
+        private int maxInFlight = 10_000;
+
+        public Builder(Registry<LoadData> registry) {
+            this.registry = registry;
+        }
+
+        // operations started per second, across all operation types
+        public Builder withRate(int rate) {
+            if (rate <= 0) {
+                throw new IllegalArgumentException("Rate must be positive: " + rate);
+            }
+            this.rate = rate;
+            return this;
+        }
+
+        // load that runs before the measurement starts and is left out of the report
+        public Builder withWarmup(Duration warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        public Builder withDuration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        public Builder withMix(OperationMix mix) {
+            this.mix = mix;
+            return this;
+        }
+
+        // entities written before the run, the reads pick among them
+        public Builder withPreload(int preload) {
+            if (preload <= 0) {
+                throw new IllegalArgumentException("Preload must be positive: " + preload);
+            }
+            this.preload = preload;
+            return this;
+        }
+
+        // once this many operations are running the schedule waits for one to finish. Those that are due in
+        // the meantime start late and their latency still counts from when they were due.
+        public Builder withMaxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("Max in flight must be positive: " + maxInFlight);
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            return new LoadGenerator(this);
+        }
+    }
+
+    private record Recorder(LatencyHistogram responseTime, LatencyHistogram serviceTime, LongAdder errors) {
+        Recorder() {
+            this(new LatencyHistogram(), new LatencyHistogram(), new LongAdder());
+        }
+    }
+
+    public LoadReport run() {
+        var entityIds = new Id[preload];
+        var keys = new LoadData.Key[preload];
+        IntStream.range(0, preload).parallel().forEach(i -> {
+            var entityId = UniqueId.generate();
+            var key = UUID.randomUUID().toString();
+            var components = entity(entityId, key);
+            registry.execute(() -> components);
+            entityIds[i] = entityId;
+            keys[i] = new LoadData.Key(key);
+        });
+
+        var recorders = new EnumMap<LoadOperation, Recorder>(LoadOperation.class);
+        for (var operation : mix.weights().keySet()) {
+            recorders.put(operation, new Recorder());
+        }
+        var inFlight = new Semaphore(maxInFlight);
+        var random = ThreadLocalRandom.current();
+        var start = System.nanoTime();
+        var measureFrom = start + warmup.toNanos();
+        var end = measureFrom + duration.toNanos();
+        // operations due in the window may finish after it, the throughput counts the time until the last one did
+        var lastCompletion = new AtomicLong(end);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                var due = start + i * NANOS_PER_SECOND / rate;
+                if (due >= end) {
+                    break;
+                }
+                parkUntil(due);
+                var operation = mix.pick(random.nextInt(mix.total()));
+                var recorder = due >= measureFrom ? recorders.get(operation) : null;
+                inFlight.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        var started = System.nanoTime();
+                        var failed = false;
+                        try {
+                            execute(operation, entityIds, keys);
+                        } catch (RuntimeException e) {
+                            failed = true;
+                        }
+                        var done = System.nanoTime();
+                        if (recorder != null) {
+                            lastCompletion.accumulateAndGet(done, Math::max);
+                            recorder.responseTime().record(done - due);
+                            recorder.serviceTime().record(done - started);
+                            if (failed) {
+                                recorder.errors().increment();
+                            }
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+
+        var elapsed = Duration.ofNanos(lastCompletion.get() - measureFrom);
+        var seconds = elapsed.toNanos() / (double) NANOS_PER_SECOND;
+        var operations = new ArrayList<LoadReport.OperationReport>();
+        recorders.forEach((operation, recorder) -> {
+            var responseTime = recorder.responseTime().snapshot();
+            operations.add(new LoadReport.OperationReport(operation, responseTime.count(), recorder.errors().sum(),
+                    responseTime.count() / seconds, responseTime, recorder.serviceTime().snapshot()));
+        });
+        return new LoadReport(rate, elapsed, List.copyOf(operations));
+    }
+
+    private void execute(LoadOperation operation, Id[] entityIds, LoadData.Key[] keys) {
+        var random = ThreadLocalRandom.current();
+        switch (operation) {
+            case WRITE -> {
+                var components = entity(UniqueId.generate(), UUID.randomUUID().toString());
+                registry.execute(() -> components);
+            }
+            case BY_ENTITY_ID -> registry.execute(Query.byEntityId(entityIds[random.nextInt(entityIds.length)]));
+            case BY_UNIQUE_KEY -> registry.execute(Query.<LoadData>byUniqueKey(keys[random.nextInt(keys.length)]));
+        }
+    }
+
+    private static List<Component<LoadData>> entity(Id entityId, String key) {
+        return List.of(
+                new Component<>(UniqueId.generate(), entityId, new LoadData.Key(key), true),
+                new Component<>(UniqueId.generate(), entityId, new LoadData.Account("owner-" + key, "EUR", 1_000_00)));
+    }
+
+    private static void parkUntil(long deadline) {
+        for (var remaining = deadline - System.nanoTime(); remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.jt.ecs.loadgen;
+
+public enum LoadOperation {
+    WRITE("write"),
+    BY_ENTITY_ID("byEntityId"),
+    BY_UNIQUE_KEY("byUniqueKey");
+
+    private final String label;
+
+    LoadOperation(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public static LoadOperation fromLabel(String label) {
+        for (var operation : values()) {
+            if (operation.label.equals(label)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + label);
+    }
+}
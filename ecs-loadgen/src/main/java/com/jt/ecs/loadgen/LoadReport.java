@@ -0,0 +1,44 @@
+package com.jt.ecs.loadgen;
+
+import com.jt.ecs.api.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.List;
+
+// responseTime is measured from the moment the schedule meant an operation to start, serviceTime from the
+// moment it did start. The gap between the two is the queueing a backend that falls behind its rate causes.
+// measured runs from the start of the window to the last completion of an operation due in it, so the
+// achieved throughput falls below the target when the backend can't keep up.
+public record LoadReport(int targetRate, Duration measured, List<OperationReport> operations) {
+
+    public record OperationReport(LoadOperation operation, long count, long errors, double throughput,
+                                  LatencyHistogram.Snapshot responseTime, LatencyHistogram.Snapshot serviceTime) {}
+
+    public OperationReport operation(LoadOperation operation) {
+        return operations.stream()
+                .filter(report -> report.operation() == operation)
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Not in the mix: " + operation.label()));
+    }
+
+    public double throughput() {
+        return operations.stream().mapToDouble(OperationReport::throughput).sum();
+    }
+
+    public String format() {
+        var out = new StringBuilder();
+        out.append("target %d ops/s, achieved %.1f ops/s over %s%n".formatted(targetRate, throughput(), measured));
+        out.append("%-12s %10s %8s %10s  %-31s  %s%n".formatted(
+                "operation", "count", "errors", "ops/s", "response p50/p99/p99.9 ms", "service p50/p99/p99.9 ms"));
+        for (var report : operations) {
+            out.append("%-12s %10d %8d %10.1f  %-31s  %s%n".formatted(
+                    report.operation().label(), report.count(), report.errors(), report.throughput(),
+                    quantiles(report.responseTime()), quantiles(report.serviceTime())));
+        }
+        return out.toString();
+    }
+
+    private static String quantiles(LatencyHistogram.Snapshot snapshot) {
+        return "%.3f/%.3f/%.3f".formatted(snapshot.p50() / 1e6, snapshot.p99() / 1e6, snapshot.p999() / 1e6);
+    }
+}
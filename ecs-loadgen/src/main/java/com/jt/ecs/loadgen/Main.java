@@ -0,0 +1,115 @@
+package com.jt.ecs.loadgen;
+
+import com.jt.ecs.api.Registry;
+import com.jt.ecs.inmemory.InMemoryRegistry;
+import com.jt.ecs.mysql.MysqlRegistry;
+import com.mysql.cj.jdbc.MysqlDataSource;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public final class Main {
+    private final static String USAGE = """
+            usage: loadgen [--option=value ...]
+              --backend=in-memory|mysql   registry under load (in-memory)
+              --url=jdbc:mysql://...      connection url, required by the mysql backend
+              --rate=1000                 operations started per second
+              --warmup=10s                load before the measurement, left out of the report
+              --duration=60s              measured load
+              --mix=write=10,byEntityId=60,byUniqueKey=30
+              --preload=10000             entities written before the run, the reads pick among them
+              --max-in-flight=10000       running operations before the schedule waits""";
+    private final static Set<String> OPTIONS = Set.of(
+            "backend", "url", "rate", "warmup", "duration", "mix", "preload", "max-in-flight");
+
+    private Main() {
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options;
+        try {
+            options = options(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.containsKey("help")) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        var builder = LoadGenerator.of(registry(options.getOrDefault("backend", "in-memory"), options.get("url")));
+        if (options.containsKey("rate")) {
+            builder.withRate(Integer.parseInt(options.get("rate")));
+        }
+        if (options.containsKey("warmup")) {
+            builder.withWarmup(duration(options.get("warmup")));
+        }
+        if (options.containsKey("duration")) {
+            builder.withDuration(duration(options.get("duration")));
+        }
+        if (options.containsKey("mix")) {
+            builder.withMix(OperationMix.parse(options.get("mix")));
+        }
+        if (options.containsKey("preload")) {
+            builder.withPreload(Integer.parseInt(options.get("preload")));
+        }
+        if (options.containsKey("max-in-flight")) {
+            builder.withMaxInFlight(Integer.parseInt(options.get("max-in-flight")));
+        }
+        System.out.print(builder.build().run().format());
+    }
+
+    static Map<String, String> options(String[] args) {
+        var options = new HashMap<String, String>();
+        for (var arg : args) {
+            if (arg.equals("--help")) {
+                options.put("help", "");
+                continue;
+            }
+            var separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --option=value: " + arg);
+            }
+            var name = arg.substring(2, separator);
+            if (!OPTIONS.contains(name)) {
+                throw new IllegalArgumentException("Unknown option: " + name);
+            }
+            options.put(name, arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    // "500ms", "30s", "5m" or an ISO-8601 duration
+    static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.parse(value);
+    }
+
+    private static Registry<LoadData> registry(String backend, String url) {
+        return switch (backend) {
+            case "in-memory" -> new InMemoryRegistry<>();
+            case "mysql" -> {
+                if (url == null) {
+                    throw new IllegalArgumentException("The mysql backend requires --url");
+                }
+                var dataSource = new MysqlDataSource();
+                dataSource.setURL(MysqlRegistry.withStatementCache(url));
+                yield new MysqlRegistry<>(LoadData.SYSTEM, dataSource);
+            }
+            default -> throw new IllegalArgumentException("Unknown backend: " + backend);
+        };
+    }
+}
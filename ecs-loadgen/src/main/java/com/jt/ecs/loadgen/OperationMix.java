@@ -0,0 +1,75 @@
+package com.jt.ecs.loadgen;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Relative weights of the operations, "write=10,byEntityId=60,byUniqueKey=30" sends one in ten
+// operations to writes. Operations left out or weighted 0 are never picked.
+public final class OperationMix {
+    public final static OperationMix DEFAULT = of(Map.of(
+            LoadOperation.WRITE, 10,
+            LoadOperation.BY_ENTITY_ID, 60,
+            LoadOperation.BY_UNIQUE_KEY, 30));
+
+    private final Map<LoadOperation, Integer> weights;
+    private final LoadOperation[] operations;
+    private final int[] cumulative;
+    private final int total;
+
+    private OperationMix(Map<LoadOperation, Integer> weights) {
+        this.weights = Collections.unmodifiableMap(new EnumMap<>(weights));
+        this.operations = new LoadOperation[this.weights.size()];
+        this.cumulative = new int[this.weights.size()];
+        int i = 0;
+        int sum = 0;
+        for (var entry : this.weights.entrySet()) {
+            sum += entry.getValue();
+            operations[i] = entry.getKey();
+            cumulative[i++] = sum;
+        }
+        this.total = sum;
+    }
+
+    public static OperationMix of(Map<LoadOperation, Integer> weights) {
+        for (var entry : weights.entrySet()) {
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException("Negative weight for " + entry.getKey().label() + ": " + entry.getValue());
+            }
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("At least one operation must have a weight");
+        }
+        return new OperationMix(weights);
+    }
+
+    public static OperationMix parse(String spec) {
+        var weights = new EnumMap<LoadOperation, Integer>(LoadOperation.class);
+        for (var part : spec.split(",")) {
+            var pair = part.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight: " + part);
+            }
+            weights.put(LoadOperation.fromLabel(pair[0].trim()), Integer.parseInt(pair[1].trim()));
+        }
+        return of(weights);
+    }
+
+    public Map<LoadOperation, Integer> weights() {
+        return weights;
+    }
+
+    int total() {
+        return total;
+    }
+
+    // roll is uniform in [0, total)
+    LoadOperation pick(int roll) {
+        for (int i = 0; i < cumulative.length; i++) {
+            if (roll < cumulative[i]) {
+                return operations[i];
+            }
+        }
+        throw new IllegalArgumentException("Roll out of range: " + roll);
+    }
+}
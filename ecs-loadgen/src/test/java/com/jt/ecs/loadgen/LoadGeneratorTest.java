@@ -0,0 +1,87 @@
+package com.jt.ecs.loadgen;
+
+import com.jt.ecs.api.*;
+import com.jt.ecs.inmemory.InMemoryRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    // an in-memory registry whose reads take a fixed time
+    static class SlowRegistry extends InMemoryRegistry<LoadData> {
+        private final Duration delay;
+
+        SlowRegistry(Duration delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public Optional<Entity<LoadData>> execute(Query.SingletonQuery<LoadData> query) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.execute(query);
+        }
+    }
+
+    @Test
+    public void testRunsTheScheduleInTheMix() {
+        var report = LoadGenerator.of(new InMemoryRegistry<>())
+                .withRate(2000)
+                .withWarmup(Duration.ofMillis(100))
+                .withDuration(Duration.ofMillis(300))
+                .withPreload(100)
+                .build()
+                .run();
+        // operations are due every 0.5ms, 600 of them fall in the measured 300ms
+        assertEquals(600, report.operations().stream().mapToLong(LoadReport.OperationReport::count).sum());
+        for (var operation : LoadOperation.values()) {
+            var stats = report.operation(operation);
+            assertTrue(stats.count() > 0);
+            assertEquals(0, stats.errors());
+            assertEquals(stats.count() / (report.measured().toNanos() / 1e9), stats.throughput(), 1e-6);
+        }
+        assertTrue(report.format().contains("byUniqueKey"));
+    }
+
+    @Test
+    public void testLatencyIncludesTimeBehindSchedule() {
+        // a backend that serves 200 reads per second, one at a time, offered 400 per second
+        var report = LoadGenerator.of(new SlowRegistry(Duration.ofMillis(5)))
+                .withRate(400)
+                .withWarmup(Duration.ZERO)
+                .withDuration(Duration.ofMillis(500))
+                .withMix(OperationMix.of(Map.of(LoadOperation.BY_ENTITY_ID, 1)))
+                .withPreload(10)
+                .withMaxInFlight(1)
+                .build()
+                .run();
+        var stats = report.operation(LoadOperation.BY_ENTITY_ID);
+        assertEquals(200, stats.count());
+        // the 200 operations take about a second, half the target rate
+        assertTrue(report.measured().compareTo(Duration.ofMillis(900)) > 0, report.measured().toString());
+        assertTrue(stats.throughput() < 250, String.valueOf(stats.throughput()));
+        assertTrue(stats.serviceTime().p99() < Duration.ofMillis(100).toNanos(), stats.serviceTime().toString());
+        // the last operations were due 500ms in and ran about 1s in
+        assertTrue(stats.responseTime().p99() > Duration.ofMillis(300).toNanos(), stats.responseTime().toString());
+        assertThrows(IllegalArgumentException.class, () -> report.operation(LoadOperation.WRITE));
+    }
+
+    @Test
+    public void testOptions() {
+        var options = Main.options(new String[]{"--rate=10", "--mix=write=1,byEntityId=2"});
+        assertEquals(Map.of("rate", "10", "mix", "write=1,byEntityId=2"), options);
+        assertThrows(IllegalArgumentException.class, () -> Main.options(new String[]{"--threads=4"}));
+        assertThrows(IllegalArgumentException.class, () -> Main.options(new String[]{"rate=4"}));
+        assertEquals(List.of(Duration.ofMillis(250), Duration.ofSeconds(30), Duration.ofMinutes(2), Duration.ofHours(1)),
+                List.of(Main.duration("250ms"), Main.duration("30s"), Main.duration("2m"), Main.duration("PT1H")));
+    }
+}
@@ -0,0 +1,39 @@
+package com.jt.ecs.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationMixTest {
+
+    @Test
+    public void testParse() {
+        var mix = OperationMix.parse("write=1, byUniqueKey=3");
+        assertEquals(Map.of(LoadOperation.WRITE, 1, LoadOperation.BY_UNIQUE_KEY, 3), mix.weights());
+        assertEquals(4, mix.total());
+        assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("scan=1"));
+        assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("write"));
+        assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("write=0"));
+        assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("write=-1,byEntityId=2"));
+    }
+
+    @Test
+    public void testPickFollowsWeights() {
+        var mix = OperationMix.parse("write=10,byEntityId=60,byUniqueKey=30");
+        var picked = new EnumMap<LoadOperation, Integer>(LoadOperation.class);
+        for (int roll = 0; roll < mix.total(); roll++) {
+            picked.merge(mix.pick(roll), 1, Integer::sum);
+        }
+        assertEquals(mix.weights(), picked);
+        assertThrows(IllegalArgumentException.class, () -> mix.pick(mix.total()));
+    }
+
+    @Test
+    public void testZeroWeightIsNeverPicked() {
+        var mix = OperationMix.parse("write=0,byEntityId=1");
+        assertEquals(LoadOperation.BY_ENTITY_ID, mix.pick(0));
+    }
+}
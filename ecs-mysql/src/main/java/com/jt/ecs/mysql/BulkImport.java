@@ -0,0 +1,240 @@
+package com.jt.ecs.mysql;
+
+import com.jt.ecs.api.Component;
+import com.jt.ecs.api.RegistryMetrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Backfills new components: the input is cut into chunks of consecutive components that commit in
+// their own transactions, several at a time on separate connections. Every chunk records its range
+// of input positions in bulk_import_chunk within its transaction, so running an import again under
+// the same name and with the same input skips whatever an earlier run committed. Chunks take their
+// change feed sequences in their last statement, so they only serialize on the system's counter from
+// there to their commit.
+public class BulkImport<D> {
+    private final static String COMMITTED_CHUNKS = "SELECT first_position, row_count FROM bulk_import_chunk WHERE system_id = ? AND import_name = ?";
+    private final static String MARK_CHUNK = "INSERT INTO bulk_import_chunk (system_id, import_name, first_position, row_count, created_at) VALUES (?, ?, ?, ?, ?)";
+
+    private record Chunk<D>(long firstPosition, List<Component<D>> components) {}
+
+    // counters of one run, the listener is called under the same lock so it sees them in order
+    private static class Tracker {
+        private final Consumer<BulkImportProgress> listener;
+        private long committedRows;
+        private long committedChunks;
+        private long skippedRows;
+        private long payloadSize;
+
+        Tracker(Consumer<BulkImportProgress> listener) {
+            this.listener = listener;
+        }
+
+        synchronized void skipped() {
+            skippedRows++;
+        }
+
+        synchronized void committed(int rows, long payload) {
+            committedRows += rows;
+            committedChunks++;
+            payloadSize += payload;
+            listener.accept(progress());
+        }
+
+        synchronized BulkImportProgress progress() {
+            return new BulkImportProgress(committedRows, committedChunks, skippedRows, payloadSize);
+        }
+    }
+
+    private final MysqlRegistry<D> registry;
+    private final String name;
+    private final int chunkSize;
+    private final int parallelism;
+    private final boolean loadData;
+    private final Consumer<BulkImportProgress> progressListener;
+
+    private BulkImport(Builder<D> builder) {
+        this.registry = builder.registry;
+        this.name = builder.name;
+        this.chunkSize = builder.chunkSize;
+        this.parallelism = builder.parallelism;
+        this.loadData = builder.loadData;
+        this.progressListener = builder.progressListener;
+    }
+
+    public static <D> Builder<D> of(MysqlRegistry<D> registry, String name) {
+        return new Builder<>(registry, name);
+    }
+
+    public static class Builder<D> {
+        private final MysqlRegistry<D> registry;
+        private final String name;
+        private int chunkSize = 5000;
+        private int parallelism = 4;
+        private boolean loadData;
+        private Consumer<BulkImportProgress> progressListener = progress -> {};
+
+        public Builder(MysqlRegistry<D> registry, String name) {
+            this.registry = registry;
+            this.name = name;
+        }
+
+        // components per transaction, statements within it are split further by row count and size
+        public Builder<D> withChunkSize(int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder<D> withParallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        // stream every chunk with LOAD DATA LOCAL INFILE, requires Connector/J with allowLoadLocalInfile=true
+        public Builder<D> withLoadData(boolean loadData) {
+            this.loadData = loadData;
+            return this;
+        }
+
+        // called after every committed chunk, one call at a time
+        public Builder<D> withProgressListener(Consumer<BulkImportProgress> progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        public BulkImport<D> build() {
+            return new BulkImport<>(this);
+        }
+    }
+
+    // imports only new components (version 0), the input must yield them in the same order on every run
+    public BulkImportProgress run(Iterator<Component<D>> components) {
+        var committed = committedChunks();
+        var tracker = new Tracker(progressListener);
+        var failure = new AtomicReference<RuntimeException>();
+        // two chunks per connection keep every connection busy without reading far ahead of the writes
+        var permits = new Semaphore(parallelism * 2);
+        try (var executor = Executors.newFixedThreadPool(parallelism)) {
+            var chunk = new ArrayList<Component<D>>(chunkSize);
+            var firstPosition = 0L;
+            var position = 0L;
+            while (failure.get() == null && components.hasNext()) {
+                var component = components.next();
+                if (component.version() != 0) {
+                    throw new IllegalArgumentException("Bulk imports only add components, got version " + component.version());
+                }
+                var range = committed.floorEntry(position);
+                if (range != null && position < range.getKey() + range.getValue()) {
+                    tracker.skipped();
+                } else {
+                    if (chunk.isEmpty()) {
+                        firstPosition = position;
+                    }
+                    chunk.add(component);
+                }
+                position++;
+                // a chunk also ends where a committed range starts, so every chunk covers consecutive positions
+                if (!chunk.isEmpty() && (chunk.size() == chunkSize || committed.containsKey(position))) {
+                    submit(executor, permits, failure, tracker, new Chunk<>(firstPosition, chunk));
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty() && failure.get() == null) {
+                submit(executor, permits, failure, tracker, new Chunk<>(firstPosition, chunk));
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return tracker.progress();
+    }
+
+    private void submit(ExecutorService executor, Semaphore permits, AtomicReference<RuntimeException> failure,
+                        Tracker tracker, Chunk<D> chunk) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new RuntimeException("Bulk import interrupted", e));
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                if (failure.get() == null) {
+                    write(chunk, tracker);
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    private void write(Chunk<D> chunk, Tracker tracker) {
+        var timer = registry.timer(RegistryMetrics.Operation.BULK_IMPORT);
+        try (var conn = registry.connection()) {
+            conn.setAutoCommit(false);
+            // the marker goes first, a second run of the same import fails on it before writing components
+            mark(conn, chunk);
+            var rows = registry.insert(conn, chunk.components(), loadData);
+            conn.commit();
+            timer.rows(rows.size(), rows.payloadSize());
+            tracker.committed(rows.size(), rows.payloadSize());
+        } catch (SQLIntegrityConstraintViolationException e) {
+            throw timer.failed(registry.translate(e));
+        } catch (SQLException e) {
+            throw timer.failed(new RuntimeException(e));
+        } catch (RuntimeException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.close();
+        }
+    }
+
+    private void mark(Connection conn, Chunk<D> chunk) throws SQLException {
+        try (var stmt = conn.prepareStatement(MARK_CHUNK)) {
+            stmt.setInt(1, Byte.toUnsignedInt(registry.system().id().value()));
+            stmt.setString(2, name);
+            stmt.setLong(3, chunk.firstPosition());
+            stmt.setInt(4, chunk.components().size());
+            stmt.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+            stmt.executeUpdate();
+        }
+    }
+
+    // first position -> row count of the chunks committed by earlier runs
+    private TreeMap<Long, Integer> committedChunks() {
+        var committed = new TreeMap<Long, Integer>();
+        try (var conn = registry.connection();
+             var stmt = conn.prepareStatement(COMMITTED_CHUNKS)) {
+            stmt.setInt(1, Byte.toUnsignedInt(registry.system().id().value()));
+            stmt.setString(2, name);
+            try (var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    committed.put(result.getLong(1), result.getInt(2));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return committed;
+    }
+}
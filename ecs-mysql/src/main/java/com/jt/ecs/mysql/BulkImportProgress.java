@@ -0,0 +1,5 @@
+package com.jt.ecs.mysql;
+
+// skippedRows were committed by an earlier run of the same import
+public record BulkImportProgress(long committedRows, long committedChunks, long skippedRows, long payloadSize) {
+}
@@ -0,0 +1,243 @@
+package com.jt.ecs.mysql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HexFormat;
+
+// Fixed-schema, column-oriented buffer for rows of the component table. Values live in primitive and
+// array columns and are bound straight to the statement, without per-row maps or boxing.
+final class ComponentRows {
+    private final static String INSERT = "insert into `component` (`system_id`,`id`,`entity_id`,`type`,`data`,`data_bin`,`version`,`created_at`,`type_and_data_hash`,`unique_flag`,`sequence`) values %s";
+    private final static String ROW_PLACEHOLDER = "(?,?,?,?,?,?,?,?,?,?,?)";
+    // the version is taken from the replaced row, so the statement inserts nothing when that row doesn't exist
+    // and hits unique_entity_id_and_type when another write replaced it first
+    final static String INSERT_NEXT_VERSION = """
+            insert into `component` (`system_id`,`id`,`entity_id`,`type`,`data`,`data_bin`,`version`,`created_at`,`type_and_data_hash`,`unique_flag`,`sequence`)
+            select ?,?,`entity_id`,`type`,?,?,`version` + 1,?,?,?,?
+            from `component`
+            where `system_id` = ? and `entity_id` = ? and `type` = ? and `version` = ?""";
+    // a replaced unique component gives up its data, the new version may claim the same data again
+    final static String RELEASE_UNIQUE = """
+            update `component` set `unique_flag` = null
+            where `system_id` = ? and `entity_id` = ? and `type` = ? and `version` = ? and `unique_flag` = 1""";
+    // streams the rows written by writeTsv. LOCAL turns duplicate keys into warnings and skipped rows,
+    // so the caller compares the loaded row count with the rows it sent.
+    final static String LOAD_DATA = """
+            load data local infile 'component.tsv' into table `component` character set utf8mb4
+            fields terminated by '\\t' escaped by '\\\\' lines terminated by '\\n'
+            (`system_id`,@id,@entity_id,`type`,`data`,@data_bin,`version`,@created_at,@hash,`unique_flag`,`sequence`)
+            set `id` = unhex(@id), `entity_id` = unhex(@entity_id), `data_bin` = unhex(@data_bin),
+                `type_and_data_hash` = unhex(@hash),
+                `created_at` = from_unixtime(@created_at / 1000)""";
+
+    private final int systemId;
+    private final byte[][] ids;
+    private final byte[][] entityIds;
+    private final int[] types;
+    // every row has either JSON data or binary data, the other column stays null
+    private final String[] data;
+    private final byte[][] binaryData;
+    private final byte[][] hashes;
+    private final boolean[] unique;
+    private final int[] versions;
+    private long firstSequence;
+    private long payloadSize;
+    private int size;
+
+    ComponentRows(int systemId, int capacity) {
+        this.systemId = systemId;
+        this.ids = new byte[capacity][];
+        this.entityIds = new byte[capacity][];
+        this.types = new int[capacity];
+        this.data = new String[capacity];
+        this.binaryData = new byte[capacity][];
+        this.hashes = new byte[capacity][];
+        this.unique = new boolean[capacity];
+        this.versions = new int[capacity];
+    }
+
+    static String insertSql(int rowCount) {
+        return INSERT.formatted(String.join(",", Collections.nCopies(rowCount, ROW_PLACEHOLDER)));
+    }
+
+    void add(byte[] id, byte[] entityId, int type, String data, byte[] hash, boolean unique, int version) {
+        this.ids[size] = id;
+        this.entityIds[size] = entityId;
+        this.types[size] = type;
+        this.data[size] = data;
+        this.hashes[size] = hash;
+        this.unique[size] = unique;
+        this.versions[size] = version;
+        this.payloadSize += utf8Length(data);
+        size++;
+    }
+
+    void add(byte[] id, byte[] entityId, int type, byte[] data, byte[] hash, boolean unique, int version) {
+        this.ids[size] = id;
+        this.entityIds[size] = entityId;
+        this.types[size] = type;
+        this.binaryData[size] = data;
+        this.hashes[size] = hash;
+        this.unique[size] = unique;
+        this.versions[size] = version;
+        this.payloadSize += data.length;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // total length of the encoded data columns
+    long payloadSize() {
+        return payloadSize;
+    }
+
+    // rows take consecutive sequences in insertion order
+    void assignSequences(long firstSequence) {
+        this.firstSequence = firstSequence;
+    }
+
+    void bind(PreparedStatement stmt, int from, int to, Timestamp createdAt) throws SQLException {
+        int paramIdx = 1;
+        for (int row = from; row < to; row++) {
+            stmt.setInt(paramIdx++, systemId);
+            stmt.setBytes(paramIdx++, ids[row]);
+            stmt.setBytes(paramIdx++, entityIds[row]);
+            stmt.setInt(paramIdx++, types[row]);
+            stmt.setString(paramIdx++, data[row]);
+            stmt.setBytes(paramIdx++, binaryData[row]);
+            stmt.setInt(paramIdx++, versions[row]);
+            stmt.setTimestamp(paramIdx++, createdAt);
+            stmt.setBytes(paramIdx++, hashes[row]);
+            if (unique[row]) {
+                stmt.setInt(paramIdx++, 1);
+            } else {
+                stmt.setNull(paramIdx++, Types.TINYINT);
+            }
+            stmt.setLong(paramIdx++, firstSequence + row);
+        }
+    }
+
+    // rows in the LOAD_DATA format, binary columns hex encoded and NULL as \N
+    void writeTsv(StringBuilder out, int from, int to, Timestamp createdAt) {
+        var hex = HexFormat.of();
+        for (int row = from; row < to; row++) {
+            out.append(systemId).append('\t')
+                    .append(hex.formatHex(ids[row])).append('\t')
+                    .append(hex.formatHex(entityIds[row])).append('\t')
+                    .append(types[row]).append('\t');
+            if (data[row] != null) {
+                escapeTsv(out, data[row]);
+            } else {
+                out.append("\\N");
+            }
+            out.append('\t')
+                    .append(binaryData[row] != null ? hex.formatHex(binaryData[row]) : "\\N").append('\t')
+                    .append(versions[row]).append('\t')
+                    .append(createdAt.getTime()).append('\t')
+                    .append(hex.formatHex(hashes[row])).append('\t')
+                    .append(unique[row] ? "1" : "\\N").append('\t')
+                    .append(firstSequence + row).append('\n');
+        }
+    }
+
+    private static void escapeTsv(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '\t' -> out.append("\\t");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\0' -> out.append("\\0");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    // bytes the row's data takes in a statement, text is sent as UTF-8
+    int dataLength(int row) {
+        return data[row] != null ? utf8Length(data[row]) : binaryData[row].length;
+    }
+
+    static int utf8Length(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c >= 0x800) {
+                // three bytes, or four for a surrogate pair that takes two chars
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    byte[] id(int row) {
+        return ids[row];
+    }
+
+    byte[] hash(int row) {
+        return hashes[row];
+    }
+
+    byte[] entityId(int row) {
+        return entityIds[row];
+    }
+
+    // one member of an entity_snapshot document. The array keeps JSON_MERGE_PATCH from merging into the
+    // previous version of the component, an array replaces the old value as a whole. Binary data is
+    // kept base64 encoded under data_bin, only one of the two keys is present.
+    String snapshotMember(int row, Timestamp createdAt) {
+        return "\"" + types[row] + "\":[{"
+                + "\"id\":\"" + HexFormat.of().formatHex(ids[row]) + "\","
+                + "\"type\":" + types[row] + ","
+                + (data[row] != null
+                        ? "\"data\":" + data[row] + ","
+                        : "\"data_bin\":\"" + Base64.getEncoder().encodeToString(binaryData[row]) + "\",")
+                + "\"created_at\":\"" + createdAt + "\","
+                + "\"unique_flag\":" + (unique[row] ? "1" : "null") + ","
+                + "\"version\":" + versions[row] + "}]";
+    }
+
+    boolean isUpdate(int row) {
+        return versions[row] > 0;
+    }
+
+    boolean isUnique(int row) {
+        return unique[row];
+    }
+
+    void bindNextVersion(PreparedStatement stmt, int row, Timestamp createdAt) throws SQLException {
+        stmt.setInt(1, systemId);
+        stmt.setBytes(2, ids[row]);
+        stmt.setString(3, data[row]);
+        stmt.setBytes(4, binaryData[row]);
+        stmt.setTimestamp(5, createdAt);
+        stmt.setBytes(6, hashes[row]);
+        if (unique[row]) {
+            stmt.setInt(7, 1);
+        } else {
+            stmt.setNull(7, Types.TINYINT);
+        }
+        stmt.setLong(8, firstSequence + row);
+        bindReplaced(stmt, 9, row);
+    }
+
+    void bindReleaseUnique(PreparedStatement stmt, int row) throws SQLException {
+        bindReplaced(stmt, 1, row);
+    }
+
+    private void bindReplaced(PreparedStatement stmt, int paramIdx, int row) throws SQLException {
+        stmt.setInt(paramIdx++, systemId);
+        stmt.setBytes(paramIdx++, entityIds[row]);
+        stmt.setInt(paramIdx++, types[row]);
+        stmt.setInt(paramIdx, versions[row] - 1);
+    }
+}
@@ -0,0 +1,68 @@
+package com.jt.ecs.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+// The connection one operation runs on and the statements prepared on it. An operation's own lease
+// closes both when the operation is done. A pinned lease belongs to a session and keeps them open,
+// so the next operation of the session reuses the connection and every statement prepared before.
+final class ConnectionLease implements AutoCloseable {
+    private final Connection connection;
+    private final boolean pinned;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    private ConnectionLease(Connection connection, boolean pinned) {
+        this.connection = connection;
+        this.pinned = pinned;
+    }
+
+    static ConnectionLease of(Connection connection) {
+        return new ConnectionLease(connection, false);
+    }
+
+    static ConnectionLease pinned(Connection connection) {
+        return new ConnectionLease(connection, true);
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    // one statement per SQL text, its parameters are cleared before it is handed out again
+    PreparedStatement prepare(String sql) throws SQLException {
+        var stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = connection.prepareStatement(sql);
+            statements.put(sql, stmt);
+        } else {
+            stmt.clearParameters();
+        }
+        return stmt;
+    }
+
+    boolean pinned() {
+        return pinned;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!pinned) {
+            release();
+        }
+    }
+
+    // closes the statements and the connection, a session calls this once it is closed
+    void release() throws SQLException {
+        try {
+            for (var stmt : statements.values()) {
+                stmt.close();
+            }
+        } finally {
+            statements.clear();
+            connection.close();
+        }
+    }
+}
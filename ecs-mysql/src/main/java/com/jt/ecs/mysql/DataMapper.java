@@ -7,4 +7,7 @@ public interface DataMapper<T> {
     T map(TypeAndData data);
 
     List<Integer> resolveTypes(List<Class<? extends T>> classes);
+
+    // lazy decoding needs a component's class before its data is parsed
+    Class<? extends T> resolveClass(int type);
 }
@@ -0,0 +1,164 @@
+package com.jt.ecs.mysql;
+
+import com.jt.ecs.api.Component;
+import com.jt.ecs.api.DuplicateEntryException;
+import com.jt.ecs.api.RegistryMetrics;
+import com.jt.ecs.api.Transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Coalesces concurrently submitted transactions into a single insert and commit. When the combined
+// insert hits a constraint violation the batch is replayed transaction by transaction behind
+// savepoints, so only the offending transactions fail and the rest still share one commit.
+public class GroupCommitWriter<D> implements AutoCloseable {
+    private record Pending<D>(List<Component<D>> components, CompletableFuture<Void> future) {}
+
+    private final static long IDLE_POLL_MILLIS = 100;
+
+    private final MysqlRegistry<D> registry;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final LinkedBlockingQueue<Pending<D>> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean closed;
+    // set by the worker once it has stopped taking batches, submissions check it under the same lock
+    private boolean stopped;
+
+    public GroupCommitWriter(MysqlRegistry<D> registry, int maxBatchSize, Duration linger) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Max batch size must be positive: " + maxBatchSize);
+        }
+        this.registry = registry;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = linger.toNanos();
+        this.worker = Thread.ofPlatform()
+                .name("ecs-group-commit")
+                .daemon()
+                .start(this::run);
+    }
+
+    public CompletableFuture<Void> execute(Transaction<D> transaction) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Writer is closed"));
+        }
+        var components = transaction.execute();
+        if (components.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var pending = new Pending<>(components, new CompletableFuture<Void>());
+        synchronized (this) {
+            if (stopped) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Writer is closed"));
+            }
+            queue.add(pending);
+        }
+        return pending.future();
+    }
+
+    private void run() {
+        var batch = new ArrayList<Pending<D>>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                var deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    var remaining = deadline - System.nanoTime();
+                    var next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            }
+
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+
+        // nothing is queued once stopped is set, so this fails whatever arrived after the last batch
+        synchronized (this) {
+            stopped = true;
+        }
+        Pending<D> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future().completeExceptionally(new IllegalStateException("Writer is closed"));
+        }
+    }
+
+    private void commit(List<Pending<D>> batch) {
+        var components = new ArrayList<Component<D>>();
+        for (var pending : batch) {
+            components.addAll(pending.components());
+        }
+
+        var timer = registry.timer(RegistryMetrics.Operation.GROUP_COMMIT);
+        try (var conn = registry.connection()) {
+            conn.setAutoCommit(false);
+            try {
+                var rows = registry.insert(conn, components);
+                conn.commit();
+                timer.rows(rows.size(), rows.payloadSize());
+                batch.forEach(pending -> pending.future().complete(null));
+            } catch (SQLIntegrityConstraintViolationException | DuplicateEntryException e) {
+                conn.rollback();
+                commitIsolated(conn, batch, timer);
+            }
+        } catch (SQLException | RuntimeException e) {
+            timer.failed(e);
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+        } finally {
+            timer.close();
+        }
+    }
+
+    private void commitIsolated(Connection conn, List<Pending<D>> batch, OperationTimer timer) throws SQLException {
+        var committed = new ArrayList<Pending<D>>(batch.size());
+        for (var pending : batch) {
+            var savepoint = conn.setSavepoint();
+            try {
+                var rows = registry.insert(conn, pending.components());
+                timer.rows(rows.size(), rows.payloadSize());
+                conn.releaseSavepoint(savepoint);
+                committed.add(pending);
+            } catch (SQLIntegrityConstraintViolationException e) {
+                conn.rollback(savepoint);
+                pending.future().completeExceptionally(registry.translate(e));
+            } catch (DuplicateEntryException e) {
+                conn.rollback(savepoint);
+                pending.future().completeExceptionally(e);
+            }
+        }
+        conn.commit();
+        committed.forEach(pending -> pending.future().complete(null));
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -20,9 +20,18 @@ record Insert(String sql, List<ValueWithType> values) {
         return stmt;
     }
 
+    private record Shape(String tableName, Set<String> columns, int rowCount) {
+        Shape detached() {
+            return new Shape(tableName, Set.copyOf(columns), rowCount);
+        }
+    }
+
+    private record Plan(String sql, List<String> columns) {}
+
     static class Builder {
         private final String tableName;
         private List<Map<String, ValueWithType>> rows;
+        private PlanCache planCache;
 
         public Builder(String tableName) {
             this.tableName = tableName;
@@ -33,33 +42,63 @@ record Insert(String sql, List<ValueWithType> values) {
             return this;
         }
 
-        private String escaped(String string) {
+        public Builder withPlanCache(PlanCache planCache) {
+            this.planCache = planCache;
+            return this;
+        }
+
+        private static String escaped(String string) {
             return "`" + string + "`";
         }
 
-        Insert build() {
-            var columns = new TreeSet<String>();
-            var values = new ArrayList<ValueWithType>();
+        private Set<String> columns() {
+            // rows of one table almost always share their key set, only merge when they don't
+            var first = rows.getFirst().keySet();
             for (var row : rows) {
-                columns.addAll(row.keySet());
+                if (!row.keySet().equals(first)) {
+                    var columns = new HashSet<String>();
+                    for (var other : rows) {
+                        columns.addAll(other.keySet());
+                    }
+                    return columns;
+                }
             }
+            return first;
+        }
 
+        private static Plan plan(Shape shape) {
+            var columns = List.copyOf(new TreeSet<>(shape.columns()));
+            var row = new StringJoiner(",", "(", ")");
+            for (int i = 0; i < columns.size(); i++) {
+                row.add("?");
+            }
             var outer = new StringJoiner(",");
-            for (var row : rows) {
-                var inner = new StringJoiner(",", "(", ")");
-                for (var column : columns) {
-                    inner.add("?");
-                    values.add(row.getOrDefault(column, ValueWithType.NULL));
-                }
-                outer.add(inner.toString());
+            for (int i = 0; i < shape.rowCount(); i++) {
+                outer.add(row.toString());
             }
 
             var sql = "insert into %s (%s) values %s".formatted(
-                    escaped(tableName),
-                    String.join(",", columns.stream().map(this::escaped).toList()),
+                    escaped(shape.tableName()),
+                    String.join(",", columns.stream().map(Builder::escaped).toList()),
                     outer.toString());
 
-            return new Insert(sql, values);
+            return new Plan(sql, columns);
+        }
+
+        Insert build() {
+            var shape = new Shape(tableName, columns(), rows.size());
+            var plan = planCache != null
+                    ? planCache.get(shape, Shape::detached, Builder::plan)
+                    : plan(shape);
+
+            var values = new ArrayList<ValueWithType>(plan.columns().size() * rows.size());
+            for (var row : rows) {
+                for (var column : plan.columns()) {
+                    values.add(row.getOrDefault(column, ValueWithType.NULL));
+                }
+            }
+
+            return new Insert(plan.sql(), values);
         }
     }
 }
@@ -0,0 +1,18 @@
+package com.jt.ecs.mysql;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import java.io.ByteArrayInputStream;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// The only use of Connector/J classes, kept apart so the driver is needed at runtime only when a
+// bulk import streams with LOAD DATA. The connection also needs allowLoadLocalInfile=true and the
+// server local_infile enabled.
+final class LocalInfile {
+    private LocalInfile() {}
+
+    static void attach(Statement stmt, byte[] content) throws SQLException {
+        stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(new ByteArrayInputStream(content));
+    }
+}
@@ -0,0 +1,332 @@
+package com.jt.ecs.mysql;
+
+import com.jt.ecs.api.RegistryMetrics;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the component table in shape for the registered systems. Every system gets a list partition of its
+// own, and versions its RetentionPolicy no longer keeps are deleted by a background thread. The thread walks
+// each system's primary key in windows of batchSize rows, one short delete per window with a pause after it,
+// so pruning never holds locks or competes with writes for long.
+public class Maintenance implements AutoCloseable {
+    private final static String PARTITIONS = """
+            SELECT PARTITION_NAME, PARTITION_DESCRIPTION
+            FROM information_schema.PARTITIONS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'component'""";
+    // DDL takes no parameters, the system id is a number formatted in by the caller
+    private final static String ADD_PARTITION = "ALTER TABLE component ADD PARTITION (PARTITION system%d VALUES IN (%d))";
+    // MySQL error codes of a partition that another process added first
+    private final static Set<Integer> PARTITION_EXISTS = Set.of(1495, 1517);
+
+    private final static String NEXT_WINDOW = """
+            SELECT id
+            FROM component
+            WHERE system_id = ? AND id > ?
+            ORDER BY id
+            LIMIT ?""";
+    // versions are consecutive from the oldest kept one on, so a row is out of the kept versions exactly
+    // when the version keepVersions above it exists
+    private final static String PRUNE_WINDOW = """
+            DELETE old
+            FROM component old
+            JOIN component newer
+              ON newer.system_id = old.system_id
+             AND newer.entity_id = old.entity_id
+             AND newer.type = old.type
+             AND newer.version = old.version + ?
+            WHERE old.system_id = ? AND old.id > ? AND old.id <= ? AND newer.created_at <= ?""";
+
+    private final static String TABLE_SIZES = """
+            SELECT TABLE_NAME, TABLE_ROWS, DATA_LENGTH, INDEX_LENGTH
+            FROM information_schema.TABLES
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_TYPE = 'BASE TABLE'
+            ORDER BY TABLE_NAME""";
+    private final static String PARTITION_SIZES = """
+            SELECT TABLE_NAME, PARTITION_NAME, TABLE_ROWS, DATA_LENGTH, INDEX_LENGTH
+            FROM information_schema.PARTITIONS
+            WHERE TABLE_SCHEMA = DATABASE() AND PARTITION_NAME IS NOT NULL
+            ORDER BY TABLE_NAME, PARTITION_ORDINAL_POSITION""";
+    // the statistics of a partitioned table are kept per partition, under "<table>#p#<partition>"
+    private final static String INDEX_SIZES = """
+            SELECT SUBSTRING_INDEX(table_name, '#', 1) AS table_name, index_name, SUM(stat_value) * @@innodb_page_size AS size
+            FROM mysql.innodb_index_stats
+            WHERE database_name = DATABASE() AND stat_name = 'size'
+            GROUP BY SUBSTRING_INDEX(table_name, '#', 1), index_name
+            ORDER BY table_name, index_name""";
+
+    private final DataSource dataSource;
+    private final int batchSize;
+    private final Duration pause;
+    private final Duration interval;
+    private final RegistryMetrics metrics;
+    private final Clock clock = Clock.systemUTC();
+    private final Map<SystemId, RetentionPolicy> policies = new ConcurrentHashMap<>();
+    private final CountDownLatch closing = new CountDownLatch(1);
+    private Thread worker;
+
+    private Maintenance(Builder builder) {
+        this.dataSource = builder.dataSource;
+        this.batchSize = builder.batchSize;
+        this.pause = builder.pause;
+        this.interval = builder.interval;
+        this.metrics = builder.metrics;
+    }
+
+    public static Builder of(DataSource dataSource) {
+        return new Builder(dataSource);
+    }
+
+    public static class Builder {
+        private final DataSource dataSource;
+        private int batchSize = 1000;
+        private Duration pause = Duration.ofMillis(100);
+        private Duration interval = Duration.ofHours(1);
+        private RegistryMetrics metrics = RegistryMetrics.NOOP;
+
+        public Builder(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        // rows of the primary key looked at per delete, the rows deleted are at most as many
+        public Builder withBatchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        // the throttle: the wait after every delete
+        public Builder withPause(Duration pause) {
+            this.pause = pause;
+            return this;
+        }
+
+        // the wait between two passes over all registered systems
+        public Builder withInterval(Duration interval) {
+            this.interval = interval;
+            return this;
+        }
+
+        public Builder withMetrics(RegistryMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public Maintenance build() {
+            return new Maintenance(this);
+        }
+    }
+
+    // adds the system's partition when the component table has none for it yet, the policy applies from the next pass
+    public void register(ComponentSystem<?> system, RetentionPolicy retention) {
+        provisionPartition(system.id());
+        policies.put(system.id(), retention);
+    }
+
+    private void provisionPartition(SystemId systemId) {
+        var value = Byte.toUnsignedInt(systemId.value());
+        try (var conn = dataSource.getConnection()) {
+            var partitioned = false;
+            var covered = new HashSet<Integer>();
+            try (var stmt = conn.prepareStatement(PARTITIONS);
+                 var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    if (result.getString("PARTITION_NAME") != null) {
+                        partitioned = true;
+                        covered.addAll(partitionValues(result.getString("PARTITION_DESCRIPTION")));
+                    }
+                }
+            }
+            if (!partitioned || covered.contains(value)) {
+                return;
+            }
+            try (var stmt = conn.createStatement()) {
+                stmt.execute(ADD_PARTITION.formatted(value, value));
+            } catch (SQLException e) {
+                if (!PARTITION_EXISTS.contains(e.getErrorCode())) {
+                    throw e;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // the values of a list partition, as information_schema lists them: "1" or "1,2"
+    static Set<Integer> partitionValues(String description) {
+        var values = new HashSet<Integer>();
+        if (description == null) {
+            return values;
+        }
+        for (var value : description.split(",")) {
+            values.add(Integer.parseInt(value.trim()));
+        }
+        return values;
+    }
+
+    // prunes every registered system right away and then once per interval, until closed
+    public synchronized void start() {
+        if (worker != null) {
+            throw new IllegalStateException("Maintenance is already started");
+        }
+        worker = Thread.ofPlatform()
+                .name("ecs-maintenance")
+                .daemon()
+                .start(this::run);
+    }
+
+    private void run() {
+        do {
+            for (var entry : policies.entrySet()) {
+                try {
+                    prune(entry.getKey(), entry.getValue());
+                } catch (RuntimeException e) {
+                    // already counted by the window's timer, the next pass starts over
+                }
+                if (closing.getCount() == 0) {
+                    return;
+                }
+            }
+        } while (!await(interval));
+    }
+
+    // one throttled pass over the system's components, returns the number of deleted rows
+    public long prune(ComponentSystem<?> system) {
+        var retention = policies.get(system.id());
+        if (retention == null) {
+            throw new IllegalArgumentException("System " + system.id() + " is not registered");
+        }
+        return prune(system.id(), retention);
+    }
+
+    private long prune(SystemId systemId, RetentionPolicy retention) {
+        if (!retention.prunes()) {
+            return 0;
+        }
+        var systemValue = Byte.toUnsignedInt(systemId.value());
+        var after = new byte[16];
+        var deleted = 0L;
+        while (true) {
+            var timer = OperationTimer.start(metrics, RegistryMetrics.Operation.PRUNE);
+            int windowSize = 0;
+            try (var conn = dataSource.getConnection()) {
+                byte[] last = null;
+                try (var stmt = conn.prepareStatement(NEXT_WINDOW)) {
+                    stmt.setInt(1, systemValue);
+                    stmt.setBytes(2, after);
+                    stmt.setInt(3, batchSize);
+                    try (var result = stmt.executeQuery()) {
+                        while (result.next()) {
+                            last = result.getBytes("id");
+                            windowSize++;
+                        }
+                    }
+                }
+                if (last == null) {
+                    return deleted;
+                }
+                var rows = pruneWindow(conn, systemValue, retention, after, last);
+                timer.rows(rows, 0);
+                deleted += rows;
+                after = last;
+            } catch (SQLException e) {
+                throw timer.failed(new RuntimeException(e));
+            } catch (RuntimeException e) {
+                throw timer.failed(e);
+            } finally {
+                timer.close();
+            }
+            if (windowSize < batchSize || await(pause)) {
+                return deleted;
+            }
+        }
+    }
+
+    private int pruneWindow(Connection conn, int systemValue, RetentionPolicy retention, byte[] after, byte[] last) throws SQLException {
+        try (var stmt = conn.prepareStatement(PRUNE_WINDOW)) {
+            stmt.setInt(1, retention.keepVersions());
+            stmt.setInt(2, systemValue);
+            stmt.setBytes(3, after);
+            stmt.setBytes(4, last);
+            stmt.setTimestamp(5, cutoff(clock.millis() - retention.minAge().toMillis()));
+            return stmt.executeUpdate();
+        }
+    }
+
+    // created_at keeps whole seconds, rounded to the nearest one on insert. Rounding the cutoff the same way
+    // keeps every row written before it at or below it, a zero minAge prunes everything up to now
+    static Timestamp cutoff(long millis) {
+        return new Timestamp(Math.floorDiv(millis + 500, 1000) * 1000);
+    }
+
+    // true once closed
+    private boolean await(Duration duration) {
+        try {
+            return closing.await(duration.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    public StorageStats storageStats() {
+        var tables = new ArrayList<StorageStats.Table>();
+        var partitions = new ArrayList<StorageStats.Partition>();
+        var indexes = new ArrayList<StorageStats.Index>();
+        try (var conn = dataSource.getConnection()) {
+            try (var stmt = conn.prepareStatement(TABLE_SIZES);
+                 var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    tables.add(new StorageStats.Table(result.getString(1), result.getLong(2), result.getLong(3), result.getLong(4)));
+                }
+            }
+            try (var stmt = conn.prepareStatement(PARTITION_SIZES);
+                 var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    partitions.add(new StorageStats.Partition(result.getString(1), result.getString(2),
+                            result.getLong(3), result.getLong(4), result.getLong(5)));
+                }
+            }
+            try (var stmt = conn.prepareStatement(INDEX_SIZES);
+                 var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    indexes.add(new StorageStats.Index(result.getString(1), result.getString(2), result.getLong(3)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return new StorageStats(List.copyOf(tables), List.copyOf(partitions), List.copyOf(indexes));
+    }
+
+    @Override
+    public void close() {
+        closing.countDown();
+        Thread started;
+        synchronized (this) {
+            started = worker;
+        }
+        if (started == null) {
+            return;
+        }
+        try {
+            started.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
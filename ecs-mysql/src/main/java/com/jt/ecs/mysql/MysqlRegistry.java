@@ -3,15 +3,23 @@ package com.jt.ecs.mysql;
 import com.jt.ecs.api.*;
 
 import javax.sql.DataSource;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
 import java.sql.JDBCType;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
 import java.time.Clock;
-import java.time.ZonedDateTime;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 public class MysqlRegistry<D> implements Registry<D> {
     private final static String FIND_BY_ENTITY_ID_QUERY = """
@@ -21,14 +29,16 @@ public class MysqlRegistry<D> implements Registry<D> {
                     entity_id,
                     type,
                     data,
+                    data_bin,
                     created_at,
                     unique_flag,
+                    version,
                     ROW_NUMBER() OVER(PARTITION BY type ORDER BY version DESC) as rn
                 FROM component
                 WHERE system_id = ? AND entity_id = ? %s
             )
             SELECT
-                id, entity_id, type, data, created_at, unique_flag
+                id, entity_id, type, data, data_bin, created_at, unique_flag, version
             FROM RankedComponents
             WHERE rn = 1""";
 
@@ -47,8 +57,10 @@ public class MysqlRegistry<D> implements Registry<D> {
                     entity_id,
                     type,
                     data,
+                    data_bin,
                     created_at,
                     unique_flag,
+                    version,
                     ROW_NUMBER() OVER(PARTITION BY type ORDER BY version DESC) as rn
                 FROM component
                 WHERE system_id = ?
@@ -56,149 +68,1035 @@ public class MysqlRegistry<D> implements Registry<D> {
                   %s
             )
             SELECT
-                id, entity_id, type, data, created_at, unique_flag
+                id, entity_id, type, data, data_bin, created_at, unique_flag, version
             FROM RankedComponents
             WHERE rn = 1""";
 
-    private final static String TABLE_NAME = "component";
+    private final static String FIND_BY_ENTITY_IDS_QUERY = """
+            WITH RankedComponents AS (
+                SELECT
+                    id,
+                    entity_id,
+                    type,
+                    data,
+                    data_bin,
+                    created_at,
+                    unique_flag,
+                    version,
+                    ROW_NUMBER() OVER(PARTITION BY entity_id, type ORDER BY version DESC) as rn
+                FROM component
+                WHERE system_id = ? AND entity_id IN (%s) %s
+            )
+            SELECT
+                id, entity_id, type, data, data_bin, created_at, unique_flag, version
+            FROM RankedComponents
+            WHERE rn = 1""";
+
+    // the upsert keeps the system's counter row locked until commit, so sequences become visible in commit order
+    // and a reader following the feed never skips a row that commits later with a lower sequence. Writes run it
+    // as their last statement, so writers of a system only serialize from there to their commit.
+    private final static String ALLOCATE_SEQUENCES = """
+            INSERT INTO component_sequence (system_id, last_sequence)
+            VALUES (?, LAST_INSERT_ID(?))
+            ON DUPLICATE KEY UPDATE last_sequence = LAST_INSERT_ID(last_sequence + ?)""";
+    // rows are written with sequences counting up from PROVISIONAL_SEQUENCE, below every cursor, and shifted
+    // into the allocated range at the end of the write
+    private final static long PROVISIONAL_SEQUENCE = -(1L << 62);
+    private final static String SHIFT_SEQUENCES = "UPDATE component SET sequence = sequence + ? WHERE system_id = ? AND id IN (%s)";
+
+    private final static String CHANGES_SINCE_QUERY = """
+            SELECT
+                id, entity_id, type, data, data_bin, created_at, unique_flag, version, sequence
+            FROM component
+            WHERE system_id = ? AND sequence > ? %s
+            ORDER BY sequence
+            LIMIT ?""";
+
+    private final static String FIND_BY_INDEX_QUERY = """
+            SELECT DISTINCT entity_id
+            FROM component_index
+            WHERE system_id = ? AND index_name = ? AND key_hash = ? %s
+            ORDER BY entity_id
+            LIMIT ?""";
+
+    private final static String SNAPSHOT_QUERY = """
+            SELECT
+                UNHEX(c.id) AS id, s.entity_id, c.type, c.data, FROM_BASE64(c.data_bin) AS data_bin, c.created_at, c.unique_flag, c.version
+            FROM entity_snapshot s,
+                 JSON_TABLE(s.components, '$.*[0]' COLUMNS (
+                     id CHAR(32) PATH '$.id',
+                     type SMALLINT UNSIGNED PATH '$.type',
+                     data JSON PATH '$.data',
+                     data_bin LONGTEXT PATH '$.data_bin',
+                     created_at DATETIME(3) PATH '$.created_at',
+                     unique_flag TINYINT PATH '$.unique_flag',
+                     version INT UNSIGNED PATH '$.version'
+                 )) c
+            WHERE %s %s""";
+
+    // parameters bind in the same order as the matching component table queries
+    private final static String SNAPSHOT_BY_ENTITY_ID = "s.system_id = ? AND s.entity_id = ?";
+    private final static String SNAPSHOT_BY_UNIQUE_KEY = """
+            s.entity_id = (
+                SELECT entity_id
+                FROM component
+                WHERE system_id = ? AND type_and_data_hash = ? AND unique_flag = 1
+                LIMIT 1
+            ) AND s.system_id = ?""";
+    private final static String SNAPSHOT_BY_ENTITY_IDS = "s.system_id = ? AND s.entity_id IN (%s)";
+
+    private final static String UPSERT_SNAPSHOTS = """
+            INSERT INTO entity_snapshot (system_id, entity_id, components)
+            VALUES %s AS new
+            ON DUPLICATE KEY UPDATE components = JSON_MERGE_PATCH(entity_snapshot.components, new.components)""";
+
+    private final static String UNIQUE_KEY_HASHES = "SELECT type_and_data_hash FROM component WHERE system_id = ? AND unique_flag = 1";
+    private final static String LAST_SEQUENCE = "SELECT last_sequence FROM component_sequence WHERE system_id = ?";
+    private final static String UNIQUE_KEY_HASHES_SINCE = """
+            SELECT type_and_data_hash, sequence
+            FROM component
+            WHERE system_id = ? AND sequence > ? AND unique_flag = 1
+            ORDER BY sequence
+            LIMIT ?""";
+
+    private final static String EXECUTED_GTID_SET = "SELECT @@global.gtid_executed";
+    private final static String WAIT_FOR_GTID_SET = "SELECT WAIT_FOR_EXECUTED_GTID_SET(?, ?)";
+
+    private final static int MAX_IDS_PER_QUERY = 256;
+    private final static Duration DEFAULT_UNIQUE_KEY_FILTER_STALENESS = Duration.ofSeconds(1);
+    // 11 placeholders per row keeps a full chunk far below the 65,535 placeholder limit
+    private final static int MAX_ROWS_PER_INSERT = 1000;
+    // and a statement stays well below the default max_allowed_packet, a single larger row goes alone
+    private final static long MAX_BYTES_PER_INSERT = 4 * 1024 * 1024;
+
+    private record FindByEntityIdShape(int typeCount) {}
+    private record FindByUniqueKeyShape(int typeCount) {}
+    private record FindByEntityIdsShape(int idCount, int typeCount) {}
+    private record ComponentInsertShape(int rowCount) {}
+    private record ChangesSinceShape(int typeCount) {}
+    private record FindByIndexShape(boolean hasAfter) {}
+    private record SnapshotUpsertShape(int entityCount) {}
+    private record SequenceShiftShape(int idCount) {}
+
+    // one digest per thread, reset by every digest() call, so hashing allocates no digest and no
+    // concatenated "<type>:<data>" input
+    private final static ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
 
     private final ComponentSystem<D> system;
+    private final ComponentCodec<D> codec;
     private final DataSource dataSource;
+    private final DataSource replica;
+    private final double replicaWaitSeconds;
+    private final boolean lazyDecoding;
+    private final boolean snapshots;
+    private final UniqueKeyFilter uniqueKeyFilter;
+    private final long uniqueKeyFilterStalenessNanos;
+    private final ReentrantLock uniqueKeyFilterLock = new ReentrantLock();
+    // the change feed position up to which the filter holds every unique key, guarded by the lock
+    private long uniqueKeyFilterCursor;
+    // when the last catch-up with the feed started
+    private volatile long uniqueKeyFilterCaughtUpAt;
+    private final RegistryMetrics metrics;
+    private final Map<String, SecondaryIndex<D>> indexes;
+    private final Map<Class<?>, List<SecondaryIndex<D>>> indexesByType = new HashMap<>();
+    private final PlanCache planCache = new PlanCache();
+    private final Clock clock = Clock.systemUTC();
+    private final ConcurrentHashMap<Integer, Class<? extends D>> classesByType = new ConcurrentHashMap<>();
+    private final LongAdder replicaFallbacks = new LongAdder();
+
+    // Connector/J properties that make the driver prepare statements on the server and keep them per connection
+    public final static String STATEMENT_CACHE_PROPERTIES = "useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSqlLimit=8192";
 
+    // SQL text is stable per query shape, so a data source whose url carries STATEMENT_CACHE_PROPERTIES (see
+    // withStatementCache) reuses one server-side statement per shape and connection instead of re-parsing the query
     public MysqlRegistry(ComponentSystem<D> system, DataSource dataSource) {
-        this.system = system;
-        this.dataSource = dataSource;
+        this(of(system, dataSource));
     }
 
-    private Map<String, ValueWithType> intoRow(Component<D> component) {
-        var typeAndData = system.mapper().map(component.data());
-        var uniqueFlag = component.unique()
-                ? new ValueWithType(1, JDBCType.TINYINT)
-                : ValueWithType.NULL;
-        var typeAndDataHash = hash(typeAndData);
-
-        return Map.of(
-                "system_id", new ValueWithType(Byte.toUnsignedInt(system.id().value()), JDBCType.TINYINT),
-                "id", new ValueWithType(component.id().bytes(), JDBCType.BINARY),
-                "entity_id", new ValueWithType(component.entityId().bytes(), JDBCType.BINARY),
-                "type", new ValueWithType(typeAndData.type(), JDBCType.SMALLINT),
-                "data", new ValueWithType(typeAndData.data(), JDBCType.LONGNVARCHAR),
-                "version", new ValueWithType(0, JDBCType.INTEGER),
-                "created_at", new ValueWithType(ZonedDateTime.now(Clock.systemUTC()), JDBCType.TIMESTAMP),
-                "type_and_data_hash", new ValueWithType(typeAndDataHash, JDBCType.BINARY),
-                "unique_flag", uniqueFlag
-        );
-    }
-
-    private byte[] hash(TypeAndData typeAndData) {
-        var stringToHash = (typeAndData.type() + ":" + typeAndData.data()).getBytes(StandardCharsets.UTF_8);
-        try {
-            return MessageDigest.getInstance("SHA-256")
-                    .digest(stringToHash);
-        } catch (NoSuchAlgorithmException e) {
+    private MysqlRegistry(Builder<D> builder) {
+        this.system = builder.system;
+        this.codec = builder.codec;
+        this.dataSource = builder.dataSource;
+        this.replica = builder.replica;
+        this.replicaWaitSeconds = builder.replicaWait.toNanos() / 1e9;
+        this.lazyDecoding = builder.lazyDecoding;
+        this.snapshots = builder.snapshots;
+        this.metrics = builder.metrics;
+        this.indexes = Map.copyOf(builder.indexes);
+        for (var index : indexes.values()) {
+            indexesByType.computeIfAbsent(index.type(), k -> new ArrayList<>()).add(index);
+        }
+        this.uniqueKeyFilter = builder.expectedUniqueKeys > 0
+                ? new UniqueKeyFilter(builder.expectedUniqueKeys, builder.uniqueKeyFalsePositiveRate)
+                : null;
+        this.uniqueKeyFilterStalenessNanos = builder.uniqueKeyFilterStaleness.toNanos();
+    }
+
+    public static <D> Builder<D> of(ComponentSystem<D> system, DataSource dataSource) {
+        return new Builder<>(system, dataSource);
+    }
+
+    public static class Builder<D> {
+        private final ComponentSystem<D> system;
+        private final DataSource dataSource;
+        private ComponentCodec<D> codec;
+        private DataSource replica;
+        private Duration replicaWait = Duration.ZERO;
+        private boolean lazyDecoding;
+        private boolean snapshots;
+        private long expectedUniqueKeys;
+        private double uniqueKeyFalsePositiveRate;
+        private Duration uniqueKeyFilterStaleness = DEFAULT_UNIQUE_KEY_FILTER_STALENESS;
+        private RegistryMetrics metrics = RegistryMetrics.NOOP;
+        private final Map<String, SecondaryIndex<D>> indexes = new HashMap<>();
+
+        public Builder(ComponentSystem<D> system, DataSource dataSource) {
+            this.system = system;
+            this.dataSource = dataSource;
+        }
+
+        // write component data as codec bytes to data_bin instead of JSON. The DataMapper still resolves
+        // types for queries and lazy decoding, so the codec must assign the same types, and rows written
+        // as JSON stay readable. Unique data hashes its encoded form: a key written as JSON isn't found
+        // by a lookup through the codec, so switch only systems without unique components, or new ones.
+        public Builder<D> withCodec(ComponentCodec<D> codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        // keep each component's raw payload and parse it on first Component.data() access
+        public Builder<D> withLazyDecoding(boolean lazyDecoding) {
+            this.lazyDecoding = lazyDecoding;
+            return this;
+        }
+
+        // singleton queries read from the replica, and from the primary when the replica is unreachable. A query
+        // carrying a ReadToken waits up to replicaWait for the replica to apply it and reads from the primary when
+        // it doesn't. The wait must be positive, the server waits forever on a zero timeout.
+        public Builder<D> withReplica(DataSource replica, Duration replicaWait) {
+            if (replicaWait.isNegative() || replicaWait.isZero()) {
+                throw new IllegalArgumentException("Replica wait must be positive: " + replicaWait);
+            }
+            this.replica = replica;
+            this.replicaWait = replicaWait;
+            return this;
+        }
+
+        // maintain entity_snapshot in every write and serve entity reads from it with one primary-key lookup
+        // instead of ranking all versions. Run SnapshotRebuilder once when enabling this on existing data.
+        public Builder<D> withSnapshots(boolean snapshots) {
+            this.snapshots = snapshots;
+            return this;
+        }
+
+        // answers lookups of unique keys that were never written without a query. build() loads every stored key
+        // and the filter follows the change feed for the keys other processes write, see the overload below
+        public Builder<D> withUniqueKeyFilter(long expectedKeys, double falsePositiveRate) {
+            return withUniqueKeyFilter(expectedKeys, falsePositiveRate, DEFAULT_UNIQUE_KEY_FILTER_STALENESS);
+        }
+
+        // a miss within maxStaleness of the last catch-up with the feed is answered without any I/O, so a key
+        // another process wrote in that window can be reported as missing. A later miss first reads the keys
+        // written since then, zero does that on every miss.
+        public Builder<D> withUniqueKeyFilter(long expectedKeys, double falsePositiveRate, Duration maxStaleness) {
+            if (maxStaleness.isNegative()) {
+                throw new IllegalArgumentException("Max staleness must not be negative: " + maxStaleness);
+            }
+            this.expectedUniqueKeys = expectedKeys;
+            this.uniqueKeyFalsePositiveRate = falsePositiveRate;
+            this.uniqueKeyFilterStaleness = maxStaleness;
+            return this;
+        }
+
+        public Builder<D> withMetrics(RegistryMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        // entries are only written for components inserted after the index is declared
+        public Builder<D> withIndex(SecondaryIndex<D> index) {
+            if (indexes.putIfAbsent(index.name(), index) != null) {
+                throw new IllegalArgumentException("Duplicate index name: " + index.name());
+            }
+            return this;
+        }
+
+        public MysqlRegistry<D> build() {
+            var registry = new MysqlRegistry<>(this);
+            if (registry.uniqueKeyFilter != null) {
+                registry.loadUniqueKeyFilter();
+            }
+            return registry;
+        }
+    }
+
+    // the jdbc url with STATEMENT_CACHE_PROPERTIES appended
+    public static String withStatementCache(String url) {
+        return url + (url.indexOf('?') < 0 ? "?" : "&") + STATEMENT_CACHE_PROPERTIES;
+    }
+
+    public PlanCacheStats planCacheStats() {
+        return planCache.stats();
+    }
+
+    public Optional<UniqueKeyFilterStats> uniqueKeyFilterStats() {
+        return Optional.ofNullable(uniqueKeyFilter).map(UniqueKeyFilter::stats);
+    }
+
+    // the feed position is read before the keys: a key committed after it has a higher sequence, so the next
+    // catch-up reads it even if the full scan missed it
+    private void loadUniqueKeyFilter() {
+        var systemId = Byte.toUnsignedInt(system.id().value());
+        var startedAt = System.nanoTime();
+        try (var conn = connection()) {
+            try (var stmt = conn.prepareStatement(LAST_SEQUENCE)) {
+                stmt.setInt(1, systemId);
+                try (var result = stmt.executeQuery()) {
+                    uniqueKeyFilterCursor = result.next() ? result.getLong(1) : 0;
+                }
+            }
+            try (var stmt = conn.prepareStatement(UNIQUE_KEY_HASHES, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(Integer.MIN_VALUE);
+                stmt.setInt(1, systemId);
+                try (var result = stmt.executeQuery()) {
+                    while (result.next()) {
+                        uniqueKeyFilter.add(result.getBytes(1));
+                    }
+                }
+            }
+        } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        uniqueKeyFilterCaughtUpAt = startedAt;
     }
 
-    @Override
-    public void execute(Transaction<D> transaction) {
-        try (var conn = dataSource.getConnection()) {
-            conn.setAutoCommit(false);
+    // true when the key was never written. A miss is only trusted once the filter caught up with the change feed
+    // within the allowed staleness, the keys of other writers reach it only from there. Only a miss that read
+    // nothing from the database counts as an avoided query.
+    private boolean uniqueKeyAbsent(byte[] hash) {
+        if (uniqueKeyFilter.probe(hash)) {
+            uniqueKeyFilter.counted(false);
+            return false;
+        }
+        var missedAt = System.nanoTime();
+        var queried = false;
+        if (missedAt - uniqueKeyFilterCaughtUpAt > uniqueKeyFilterStalenessNanos) {
+            try {
+                queried = catchUpUniqueKeyFilter(missedAt);
+            } catch (SQLException e) {
+                // the lookup's own query answers instead
+                uniqueKeyFilter.counted(false);
+                return false;
+            }
+            if (uniqueKeyFilter.probe(hash)) {
+                uniqueKeyFilter.counted(false);
+                return false;
+            }
+        }
+        uniqueKeyFilter.counted(!queried);
+        return true;
+    }
+
+    // one lookup at a time reads the feed, the ones waiting for it are covered when it started after their miss
+    // true when this lookup read the feed itself
+    private boolean catchUpUniqueKeyFilter(long missedAt) throws SQLException {
+        uniqueKeyFilterLock.lock();
+        try {
+            if (uniqueKeyFilterCaughtUpAt - missedAt >= 0) {
+                return false;
+            }
+            var startedAt = System.nanoTime();
+            var cursor = uniqueKeyFilterCursor;
+            try (var conn = connection();
+                 var stmt = conn.prepareStatement(UNIQUE_KEY_HASHES_SINCE)) {
+                int read;
+                do {
+                    read = 0;
+                    stmt.setInt(1, Byte.toUnsignedInt(system.id().value()));
+                    stmt.setLong(2, cursor);
+                    stmt.setInt(3, MAX_ROWS_PER_INSERT);
+                    try (var result = stmt.executeQuery()) {
+                        while (result.next()) {
+                            uniqueKeyFilter.add(result.getBytes(1));
+                            cursor = result.getLong(2);
+                            read++;
+                        }
+                    }
+                } while (read == MAX_ROWS_PER_INSERT);
+            }
+            uniqueKeyFilterCursor = cursor;
+            uniqueKeyFilterCaughtUpAt = startedAt;
+            return true;
+        } finally {
+            uniqueKeyFilterLock.unlock();
+        }
+    }
+
+    // added components come first so they can share multi-row inserts, updates follow in transaction order
+    ComponentRows encode(List<Component<D>> components) {
+        var rows = new ComponentRows(Byte.toUnsignedInt(system.id().value()), components.size());
+        for (var component : components) {
+            if (component.version() == 0) {
+                add(rows, component);
+            }
+        }
+        for (var component : components) {
+            if (component.version() > 0) {
+                add(rows, component);
+            }
+        }
+        return rows;
+    }
+
+    private void add(ComponentRows rows, Component<D> component) {
+        if (codec != null) {
+            var type = codec.type(component.data());
+            var data = codec.encode(component.data());
+            rows.add(component.id().bytes(),
+                    component.entityId().bytes(),
+                    type,
+                    data,
+                    hash(type, data),
+                    component.unique(),
+                    component.version());
+            return;
+        }
+        var typeAndData = system.mapper().map(component.data());
+        rows.add(component.id().bytes(),
+                component.entityId().bytes(),
+                typeAndData.type(),
+                typeAndData.data(),
+                hash(typeAndData),
+                component.unique(),
+                component.version());
+    }
+
+    byte[] uniqueKeyHash(D data) {
+        if (codec != null) {
+            return hash(codec.type(data), codec.encode(data));
+        }
+        return hash(system.mapper().map(data));
+    }
+
+    // sha256 of "<type>:<data>" in UTF-8, fed to the digest piece by piece
+    static byte[] hash(TypeAndData typeAndData) {
+        var digest = typePrefixed(typeAndData.type());
+        digest.update(typeAndData.data().getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    // the binary form of the same hash, digested straight from the encoded bytes
+    static byte[] hash(int type, byte[] data) {
+        var digest = typePrefixed(type);
+        digest.update(data);
+        return digest.digest();
+    }
+
+    private static MessageDigest typePrefixed(int type) {
+        var digest = SHA_256.get();
+        digest.reset();
+        if (type < 0) {
+            digest.update((byte) '-');
+        }
+        var digits = new byte[10];
+        var count = 0;
+        var remaining = Math.abs((long) type);
+        do {
+            digits[digits.length - ++count] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        digest.update(digits, digits.length - count, count);
+        digest.update((byte) ':');
+        return digest;
+    }
+
+    private static byte[] sha256(String string) {
+        var digest = SHA_256.get();
+        digest.reset();
+        return digest.digest(string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    ComponentSystem<D> system() {
+        return system;
+    }
+
+    OperationTimer timer(RegistryMetrics.Operation operation) {
+        return OperationTimer.start(metrics, operation);
+    }
+
+    Connection connection() throws SQLException {
+        return connection(dataSource);
+    }
 
-            var rows = transaction.execute()
-                    .stream()
-                    .map(this::intoRow)
-                    .toList();
+    private Connection connection(DataSource source) throws SQLException {
+        if (!metrics.enabled()) {
+            return source.getConnection();
+        }
+        var started = metrics.connectionAcquireStarted();
+        var start = System.nanoTime();
+        var conn = source.getConnection();
+        metrics.recordConnectionAcquire(started, System.nanoTime() - start);
+        return conn;
+    }
 
-            var insert = Insert.of(TABLE_NAME)
-                    .withRows(rows)
-                    .build();
+    // the primary serves every read the replica can't: it is unreachable, or fails or times out waiting for the
+    // token's write
+    private Connection readConnection(ReadToken token) throws SQLException {
+        if (replica == null) {
+            return connection();
+        }
+        // without GTIDs there is nothing to wait for, only the primary is known to have the write
+        if (token == null || !token.gtidSet().isEmpty()) {
+            Connection conn = null;
+            try {
+                conn = connection(replica);
+                if (token == null || applied(conn, token)) {
+                    return conn;
+                }
+            } catch (SQLException e) {
+                // fall back to the primary below
+            }
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    // the replica connection is given up either way
+                }
+            }
+        }
+        replicaFallbacks.increment();
+        return connection();
+    }
 
-            try (var stmt = insert.prepare(conn)) {
+    // 0 when the replica applied the set, 1 on timeout
+    private boolean applied(Connection conn, ReadToken token) throws SQLException {
+        try (var stmt = conn.prepareStatement(WAIT_FOR_GTID_SET)) {
+            stmt.setString(1, token.gtidSet());
+            stmt.setDouble(2, replicaWaitSeconds);
+            try (var result = stmt.executeQuery()) {
+                return result.next() && result.getInt(1) == 0 && !result.wasNull();
+            }
+        }
+    }
+
+    // a session's pinned lease serves every call of the session, other calls lease a connection of their own
+    private ConnectionLease readLease(ReadToken token, PinnedSession session) throws SQLException {
+        return session != null ? session.lease() : ConnectionLease.of(readConnection(token));
+    }
+
+    private ConnectionLease lease(PinnedSession session) throws SQLException {
+        return session != null ? session.lease() : ConnectionLease.of(connection());
+    }
+
+    // reads meant for the replica that the primary served
+    public long replicaFallbackCount() {
+        return replicaFallbacks.sum();
+    }
+
+    ComponentRows insert(Connection conn, List<Component<D>> components) throws SQLException {
+        return insert(conn, components, false);
+    }
+
+    // loadData streams the added components with LOAD DATA LOCAL INFILE instead of multi-row inserts
+    // Sequences are allocated only once all rows, index entries and snapshots are written. The counter row is
+    // locked from the allocation to the commit, allocating first would serialize whole transactions on it.
+    ComponentRows insert(Connection conn, List<Component<D>> components, boolean loadData) throws SQLException {
+        var rows = encode(components);
+        rows.assignSequences(PROVISIONAL_SEQUENCE);
+        write(conn, components, rows, loadData);
+        shiftSequences(conn, rows, allocateSequences(conn, rows.size()) - PROVISIONAL_SEQUENCE);
+        return rows;
+    }
+
+    private void write(Connection conn, List<Component<D>> components, ComponentRows rows, boolean loadData) throws SQLException {
+        // added before the write, a concurrent lookup can only see an extra false positive, never a false miss
+        if (uniqueKeyFilter != null) {
+            for (int row = 0; row < rows.size(); row++) {
+                if (rows.isUnique(row)) {
+                    uniqueKeyFilter.add(rows.hash(row));
+                }
+            }
+        }
+        var createdAt = new Timestamp(clock.millis());
+        var addedCount = 0;
+        while (addedCount < rows.size() && !rows.isUpdate(addedCount)) {
+            addedCount++;
+        }
+        if (addedCount > 0 && loadData) {
+            loadRows(conn, rows, addedCount, createdAt);
+        } else if (addedCount > 0) {
+            insertRows(conn, rows, addedCount, createdAt);
+        }
+        if (addedCount < rows.size()) {
+            insertNextVersions(conn, rows, addedCount, createdAt);
+        }
+        if (!indexesByType.isEmpty()) {
+            insertIndexEntries(conn, components);
+        }
+        if (snapshots) {
+            upsertSnapshots(conn, rows, createdAt);
+        }
+    }
+
+    private void insertRows(Connection conn, ComponentRows rows, int count, Timestamp createdAt) throws SQLException {
+        var from = 0;
+        while (from < count) {
+            var to = statementEnd(rows, from, count);
+            var sql = planCache.get(new ComponentInsertShape(to - from), shape -> ComponentRows.insertSql(shape.rowCount()));
+            try (var stmt = conn.prepareStatement(sql)) {
+                rows.bind(stmt, from, to, createdAt);
                 stmt.execute();
-                conn.commit();
-                if (stmt.getUpdateCount() != rows.size()) {
-                    throw new RuntimeException("Failed to insert rows. Update count: " + stmt.getUpdateCount() + ", expected: " + rows.size());
+                if (stmt.getUpdateCount() != to - from) {
+                    throw new RuntimeException("Failed to insert rows. Update count: " + stmt.getUpdateCount() + ", expected: " + (to - from));
                 }
             }
+            from = to;
+        }
+    }
 
-        } catch (SQLIntegrityConstraintViolationException e) {
-            var message = e.getMessage();
-            if (message.contains("Duplicate entry")) {
-                if (message.contains("component.unique_type_and_data")) {
-                    throw new DuplicateUniqueDataException(e);
+    private static int statementEnd(ComponentRows rows, int from, int to) {
+        var end = from + 1;
+        long bytes = rows.dataLength(from);
+        while (end < to && end - from < MAX_ROWS_PER_INSERT && bytes + rows.dataLength(end) <= MAX_BYTES_PER_INSERT) {
+            bytes += rows.dataLength(end);
+            end++;
+        }
+        return end;
+    }
+
+    private void loadRows(Connection conn, ComponentRows rows, int count, Timestamp createdAt) throws SQLException {
+        var tsv = new StringBuilder();
+        rows.writeTsv(tsv, 0, count, createdAt);
+        try (var stmt = conn.createStatement()) {
+            LocalInfile.attach(stmt, tsv.toString().getBytes(StandardCharsets.UTF_8));
+            var loaded = stmt.executeUpdate(ComponentRows.LOAD_DATA);
+            if (loaded != count) {
+                var warning = stmt.getWarnings();
+                if (warning != null) {
+                    throw translate(new SQLIntegrityConstraintViolationException(warning.getMessage(), warning.getSQLState(), warning.getErrorCode()));
                 }
+                throw new RuntimeException("Failed to load rows. Loaded: " + loaded + ", expected: " + count);
+            }
+        }
+    }
 
-                if (message.contains("component.PRIMARY")) {
-                    throw new DuplicateEntryException(e);
+    // entities are upserted in id order so concurrent writers lock snapshot rows in the same order
+    private void upsertSnapshots(Connection conn, ComponentRows rows, Timestamp createdAt) throws SQLException {
+        var documents = new TreeMap<CompactId, StringJoiner>();
+        for (int row = 0; row < rows.size(); row++) {
+            documents.computeIfAbsent(CompactId.fromBytes(rows.entityId(row)), k -> new StringJoiner(",", "{", "}"))
+                    .add(rows.snapshotMember(row, createdAt));
+        }
+        var entries = List.copyOf(documents.entrySet());
+        for (int from = 0; from < entries.size(); from += MAX_ROWS_PER_INSERT) {
+            var chunk = entries.subList(from, Math.min(from + MAX_ROWS_PER_INSERT, entries.size()));
+            var sql = planCache.get(new SnapshotUpsertShape(chunk.size()),
+                    shape -> UPSERT_SNAPSHOTS.formatted(String.join(",", Collections.nCopies(shape.entityCount(), "(?,?,?)"))));
+            try (var stmt = conn.prepareStatement(sql)) {
+                int paramIdx = 1;
+                for (var entry : chunk) {
+                    stmt.setInt(paramIdx++, Byte.toUnsignedInt(system.id().value()));
+                    stmt.setBytes(paramIdx++, entry.getKey().bytes());
+                    stmt.setString(paramIdx++, entry.getValue().toString());
                 }
+                stmt.executeUpdate();
+            }
+        }
+    }
 
-                if (message.contains("component.unique_entity_id_and_type")) {
-                    throw new DuplicateComponentException(e);
+    private void insertNextVersions(Connection conn, ComponentRows rows, int from, Timestamp createdAt) throws SQLException {
+        // whether the replaced row holds unique data is only known to the server, the statement matches it only then
+        try (var stmt = conn.prepareStatement(ComponentRows.RELEASE_UNIQUE)) {
+            for (int row = from; row < rows.size(); row++) {
+                rows.bindReleaseUnique(stmt, row);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        try (var stmt = conn.prepareStatement(ComponentRows.INSERT_NEXT_VERSION)) {
+            for (int row = from; row < rows.size(); row++) {
+                rows.bindNextVersion(stmt, row, createdAt);
+                stmt.addBatch();
+            }
+            for (var updateCount : stmt.executeBatch()) {
+                if (updateCount == 0) {
+                    throw new DuplicateComponentException("Replaced component version is not the current one");
                 }
             }
+        }
+    }
 
-            throw new RuntimeException(e);
+    private void insertIndexEntries(Connection conn, List<Component<D>> components) throws SQLException {
+        var systemId = new ValueWithType(Byte.toUnsignedInt(system.id().value()), JDBCType.TINYINT);
+        var entries = new ArrayList<Map<String, ValueWithType>>();
+        for (var component : components) {
+            for (var index : indexesByType.getOrDefault(component.dataType(), List.of())) {
+                var key = index.keyOf(component.data());
+                if (key != null) {
+                    entries.add(Map.of(
+                            "system_id", systemId,
+                            "index_name", new ValueWithType(index.name(), JDBCType.VARCHAR),
+                            "key_hash", new ValueWithType(sha256(key), JDBCType.BINARY),
+                            "entity_id", new ValueWithType(component.entityId().bytes(), JDBCType.BINARY),
+                            "component_id", new ValueWithType(component.id().bytes(), JDBCType.BINARY)));
+                }
+            }
+        }
+        for (int from = 0; from < entries.size(); from += MAX_ROWS_PER_INSERT) {
+            var chunk = entries.subList(from, Math.min(from + MAX_ROWS_PER_INSERT, entries.size()));
+            try (var stmt = Insert.of("component_index").withRows(chunk).withPlanCache(planCache).build().prepare(conn)) {
+                stmt.execute();
+            }
+        }
+    }
+
+    private void shiftSequences(Connection conn, ComponentRows rows, long shift) throws SQLException {
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_INSERT) {
+            var to = Math.min(from + MAX_ROWS_PER_INSERT, rows.size());
+            var sql = planCache.get(new SequenceShiftShape(to - from),
+                    shape -> SHIFT_SEQUENCES.formatted(String.join(",", Collections.nCopies(shape.idCount(), "?"))));
+            try (var stmt = conn.prepareStatement(sql)) {
+                int paramIdx = 1;
+                stmt.setLong(paramIdx++, shift);
+                stmt.setInt(paramIdx++, Byte.toUnsignedInt(system.id().value()));
+                for (int row = from; row < to; row++) {
+                    stmt.setBytes(paramIdx++, rows.id(row));
+                }
+                if (stmt.executeUpdate() != to - from) {
+                    throw new RuntimeException("Failed to assign sequences. Update count: " + stmt.getUpdateCount() + ", expected: " + (to - from));
+                }
+            }
+        }
+    }
+
+    private long allocateSequences(Connection conn, int count) throws SQLException {
+        try (var stmt = conn.prepareStatement(ALLOCATE_SEQUENCES)) {
+            stmt.setInt(1, Byte.toUnsignedInt(system.id().value()));
+            stmt.setLong(2, count);
+            stmt.setLong(3, count);
+            stmt.executeUpdate();
+        }
+        try (var stmt = conn.prepareStatement("SELECT LAST_INSERT_ID()");
+             var result = stmt.executeQuery()) {
+            result.next();
+            return result.getLong(1) - count + 1;
+        }
+    }
+
+    RuntimeException translate(SQLIntegrityConstraintViolationException e) {
+        var message = e.getMessage();
+        if (message.contains("Duplicate entry")) {
+            if (message.contains("component.unique_type_and_data")) {
+                return new DuplicateUniqueDataException(e);
+            }
+
+            if (message.contains("component.PRIMARY")) {
+                return new DuplicateEntryException(e);
+            }
+
+            if (message.contains("component.unique_entity_id_and_type")) {
+                return new DuplicateComponentException(e);
+            }
+        }
+
+        return new RuntimeException(e);
+    }
+
+    @Override
+    public void execute(Transaction<D> transaction) {
+        write(transaction, false, null);
+    }
+
+    // pass the token to execute(SingletonQuery, ReadToken) to read this write back from the replica
+    public ReadToken executeAndGetToken(Transaction<D> transaction) {
+        return write(transaction, true, null);
+    }
+
+    private ReadToken write(Transaction<D> transaction, boolean withToken, PinnedSession session) {
+        var components = transaction.execute();
+        var timer = timer(RegistryMetrics.Operation.TRANSACTION);
+        try (var lease = lease(session)) {
+            var conn = lease.connection();
+            conn.setAutoCommit(false);
+            ComponentRows rows;
+            try {
+                rows = insert(conn, components);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                // a session keeps using the connection, so the transaction can't be left for close to roll back
+                if (lease.pinned()) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                throw e;
+            } finally {
+                if (lease.pinned()) {
+                    conn.setAutoCommit(true);
+                }
+            }
+            timer.rows(rows.size(), rows.payloadSize());
+            if (!withToken) {
+                return null;
+            }
+            // read after the commit, so the executed set includes this transaction
+            try (var result = lease.prepare(EXECUTED_GTID_SET).executeQuery()) {
+                result.next();
+                var gtidSet = result.getString(1);
+                return new ReadToken(gtidSet == null ? "" : gtidSet);
+            }
+        } catch (SQLIntegrityConstraintViolationException e) {
+            throw timer.failed(translate(e));
         } catch (SQLException e) {
-            throw new RuntimeException(e);
+            throw timer.failed(new RuntimeException(e));
+        } catch (RuntimeException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.close();
         }
     }
 
     @Override
     public Optional<Entity<D>> execute(Query.SingletonQuery<D> query) {
+        return execute(query, null);
+    }
+
+    public Optional<Entity<D>> execute(Query.SingletonQuery<D> query, ReadToken token) {
+        return read(query, token, null);
+    }
+
+    @Override
+    public Map<Id, Entity<D>> execute(Query.MultiQuery<D> query) {
+        return read(query, null);
+    }
+
+    @Override
+    public Page<D> execute(Query.PagedQuery<D> query) {
+        return read(query, null);
+    }
+
+    @Override
+    public ChangeBatch<D> changesSince(long cursor, List<Class<? extends D>> types, int batchSize) {
+        return changesSince(cursor, types, batchSize, null);
+    }
+
+    // reads and writes on one primary connection, taken from the pool by the first call and reusing the
+    // statements prepared on it. The session sees its own writes without a ReadToken and never reads from the replica.
+    @Override
+    public Session<D> session() {
+        return new PinnedSession();
+    }
+
+    private class PinnedSession implements Session<D> {
+        private ConnectionLease lease;
+        private boolean closed;
+
+        ConnectionLease lease() throws SQLException {
+            if (closed) {
+                throw new IllegalStateException("Session is closed");
+            }
+            if (lease == null) {
+                lease = ConnectionLease.pinned(connection());
+            }
+            return lease;
+        }
+
+        @Override
+        public void execute(Transaction<D> transaction) {
+            write(transaction, false, this);
+        }
+
+        @Override
+        public Optional<Entity<D>> execute(Query.SingletonQuery<D> query) {
+            return read(query, null, this);
+        }
+
+        @Override
+        public Map<Id, Entity<D>> execute(Query.MultiQuery<D> query) {
+            return read(query, this);
+        }
+
+        @Override
+        public Page<D> execute(Query.PagedQuery<D> query) {
+            return read(query, this);
+        }
+
+        @Override
+        public ChangeBatch<D> changesSince(long cursor, List<Class<? extends D>> types, int batchSize) {
+            return MysqlRegistry.this.changesSince(cursor, types, batchSize, this);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            if (lease == null) {
+                return;
+            }
+            try {
+                lease.release();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            } finally {
+                lease = null;
+            }
+        }
+    }
+
+    private Optional<Entity<D>> read(Query.SingletonQuery<D> query, ReadToken token, PinnedSession session) {
         return switch (query) {
-            case Query.SingletonQuery.ByEntityIdQuery<D> q -> find(q);
-            case Query.SingletonQuery.ByUniqueKey<D> q -> find(q);
+            case Query.SingletonQuery.ByEntityIdQuery<D> q -> find(q, token, session);
+            case Query.SingletonQuery.ByUniqueKey<D> q -> find(q, token, session);
         };
     }
 
-    private Optional<Entity<D>> find(Query.SingletonQuery.ByEntityIdQuery<D> query) {
+    private Map<Id, Entity<D>> read(Query.MultiQuery<D> query, PinnedSession session) {
+        return switch (query) {
+            case Query.MultiQuery.ByEntityIdsQuery<D> q -> find(q, session);
+        };
+    }
+
+    private Page<D> read(Query.PagedQuery<D> query, PinnedSession session) {
+        return switch (query) {
+            case Query.PagedQuery.ByIndexQuery<D> q -> find(q, session);
+        };
+    }
+
+    private ChangeBatch<D> changesSince(long cursor, List<Class<? extends D>> types, int batchSize, PinnedSession session) {
+        List<Integer> typeIds = system.mapper().resolveTypes(types);
+        var changes = new ArrayList<Change<D>>(Math.min(batchSize, 1024));
+        var next = cursor;
+        var sql = planCache.get(new ChangesSinceShape(typeIds.size()),
+                shape -> CHANGES_SINCE_QUERY.formatted(typePlaceholder(shape.typeCount())));
+        var timer = timer(RegistryMetrics.Operation.CHANGES_SINCE);
+        try (var lease = lease(session)) {
+            var stmt = lease.prepare(sql);
+            // Connector/J streams rows one by one instead of buffering the whole result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            int paramIdx = 1;
+            stmt.setInt(paramIdx++, Byte.toUnsignedInt(system.id().value()));
+            stmt.setLong(paramIdx++, cursor);
+            for (Integer typeId : typeIds) {
+                stmt.setInt(paramIdx++, typeId);
+            }
+            stmt.setInt(paramIdx, batchSize);
+            try (var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    next = result.getLong("sequence");
+                    changes.add(new Change<>(next, readComponent(result, timer)));
+                }
+            }
+        } catch (SQLException e) {
+            throw timer.failed(new RuntimeException(e));
+        } catch (RuntimeException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.close();
+        }
+        return new ChangeBatch<>(changes, next);
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static String typePlaceholder(int typeCount) {
+        return typeCount == 0
+                ? ""
+                : "AND type IN (" + placeholders(typeCount) + ")";
+    }
+
+    private Component<D> readComponent(ResultSet result, OperationTimer timer) throws SQLException {
+        var id = result.getBytes("id");
+        var entityId = result.getBytes("entity_id");
+        var type = result.getInt("type");
+        var binaryData = result.getBytes("data_bin");
+        var data = binaryData == null ? result.getString("data") : null;
+        var _createdAt = result.getTimestamp("created_at");
+        var uniqueFlag = result.getByte("unique_flag");
+        var version = result.getInt("version");
+        timer.row(binaryData == null ? data.length() : binaryData.length);
+        Supplier<D> decoder = binaryData == null
+                ? () -> system.mapper().map(new TypeAndData(type, data))
+                : () -> decode(type, binaryData);
+        if (lazyDecoding) {
+            return Component.lazy(CompactId.fromBytes(id), CompactId.fromBytes(entityId), resolveClass(type),
+                    decoder, uniqueFlag == 1, version);
+        }
+        return new Component<>(CompactId.fromBytes(id), CompactId.fromBytes(entityId), decoder.get(), uniqueFlag == 1, version);
+    }
+
+    private D decode(int type, byte[] data) {
+        if (codec == null) {
+            throw new IllegalStateException("Component of type " + type + " is stored as bytes, the registry needs a codec to read it");
+        }
+        return codec.decode(type, ByteBuffer.wrap(data));
+    }
+
+    private Class<? extends D> resolveClass(int type) {
+        var resolved = classesByType.get(type);
+        if (resolved == null) {
+            resolved = system.mapper().resolveClass(type);
+            classesByType.put(type, resolved);
+        }
+        return resolved;
+    }
+
+    private Optional<Entity<D>> find(Query.SingletonQuery.ByEntityIdQuery<D> query, ReadToken token, PinnedSession session) {
         List<Integer> typeIds = system.mapper().resolveTypes(query.selectedTypes());
-        boolean hasTypes = !typeIds.isEmpty();
-        String typePlaceholder = hasTypes
-                ? "AND type IN (" + String.join(",", Collections.nCopies(typeIds.size(), "?")) + ")"
-                : "";
         var componentList = new ArrayList<Component<D>>();
-        try (var stmt = dataSource.getConnection().prepareStatement(FIND_BY_ENTITY_ID_QUERY.formatted(typePlaceholder))) {
+        var timer = timer(RegistryMetrics.Operation.FIND_BY_ENTITY_ID);
+        try (var lease = readLease(token, session)) {
+            var stmt = lease.prepare(planCache.get(new FindByEntityIdShape(typeIds.size()),
+                    shape -> snapshots
+                            ? SNAPSHOT_QUERY.formatted(SNAPSHOT_BY_ENTITY_ID, typePlaceholder(shape.typeCount()))
+                            : FIND_BY_ENTITY_ID_QUERY.formatted(typePlaceholder(shape.typeCount()))));
             int paramIdx = 1;
             stmt.setInt(paramIdx++, Byte.toUnsignedInt(system.id().value()));
             stmt.setBytes(paramIdx++, query.id().bytes());
             for (Integer typeId : typeIds) {
                 stmt.setInt(paramIdx++, typeId);
             }
-            var result = stmt.executeQuery();
-            while (result.next()) {
-                var id = result.getBytes("id");
-                var entityId = result.getBytes("entity_id");
-                var type = result.getInt("type");
-                var data = result.getString("data");
-                var dataObj = system.mapper().map(new TypeAndData(type, data));
-                var _createdAt = result.getTimestamp("created_at");
-                var uniqueFlag = result.getByte("unique_flag");
-                var component = new Component<>(new IdImpl(id), new IdImpl(entityId), dataObj, uniqueFlag == 1);
-                componentList.add(component);
+            try (var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    componentList.add(readComponent(result, timer));
+                }
             }
             if (!componentList.isEmpty()) {
                 return Optional.of(new Entity<>(query.id(), Collections.unmodifiableList(componentList)));
             }
         } catch (SQLException e) {
-            throw new RuntimeException(e);
+            throw timer.failed(new RuntimeException(e));
+        } catch (RuntimeException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.close();
         }
 
         return Optional.empty();
     }
 
-    private Optional<Entity<D>> find(Query.SingletonQuery.ByUniqueKey<D> query) {
+    private Optional<Entity<D>> find(Query.SingletonQuery.ByUniqueKey<D> query, ReadToken token, PinnedSession session) {
         List<Integer> typeIds = system.mapper().resolveTypes(query.selectedTypes());
-        boolean hasTypes = !typeIds.isEmpty();
-        String typePlaceholder = hasTypes
-                ? "AND type IN (" + String.join(",", Collections.nCopies(typeIds.size(), "?")) + ")"
-                : "";
         var componentList = new ArrayList<Component<D>>();
         var systemId = Byte.toUnsignedInt(system.id().value());
-        var typeAndData = system.mapper().map(query.keyData());
-        var hash = hash(typeAndData);
-        try (var stmt = dataSource.getConnection().prepareStatement(FIND_BY_UNIQUE_KEY_QUERY.formatted(typePlaceholder))) {
+        var hash = uniqueKeyHash(query.keyData());
+        if (uniqueKeyFilter != null && uniqueKeyAbsent(hash)) {
+            return Optional.empty();
+        }
+        var timer = timer(RegistryMetrics.Operation.FIND_BY_UNIQUE_KEY);
+        try (var lease = readLease(token, session)) {
+            var stmt = lease.prepare(planCache.get(new FindByUniqueKeyShape(typeIds.size()),
+                    shape -> snapshots
+                            ? SNAPSHOT_QUERY.formatted(SNAPSHOT_BY_UNIQUE_KEY, typePlaceholder(shape.typeCount()))
+                            : FIND_BY_UNIQUE_KEY_QUERY.formatted(typePlaceholder(shape.typeCount()))));
             int paramIdx = 1;
             stmt.setInt(paramIdx++, systemId);
             stmt.setBytes(paramIdx++, hash);
@@ -206,25 +1104,150 @@ public class MysqlRegistry<D> implements Registry<D> {
             for (Integer typeId : typeIds) {
                 stmt.setInt(paramIdx++, typeId);
             }
-            var result = stmt.executeQuery();
-            while (result.next()) {
-                var id = result.getBytes("id");
-                var entityId = result.getBytes("entity_id");
-                var type = result.getInt("type");
-                var data = result.getString("data");
-                var dataObj = system.mapper().map(new TypeAndData(type, data));
-                var _createdAt = result.getTimestamp("created_at");
-                var uniqueFlag = result.getByte("unique_flag");
-                var component = new Component<>(new IdImpl(id), new IdImpl(entityId), dataObj, uniqueFlag == 1);
-                componentList.add(component);
+            try (var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    componentList.add(readComponent(result, timer));
+                }
             }
             if (!componentList.isEmpty()) {
                 return Optional.of(new Entity<>(componentList.getFirst().entityId(), Collections.unmodifiableList(componentList)));
             }
         } catch (SQLException e) {
-            throw new RuntimeException(e);
+            throw timer.failed(new RuntimeException(e));
+        } catch (RuntimeException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.close();
         }
 
         return Optional.empty();
     }
+
+    private Map<Id, Entity<D>> find(Query.MultiQuery.ByEntityIdsQuery<D> query, PinnedSession session) {
+        List<Integer> typeIds = system.mapper().resolveTypes(query.selectedTypes());
+        // the entities are keyed by the caller's own Id instances
+        var requested = new LinkedHashMap<CompactId, Id>();
+        for (var id : query.ids()) {
+            requested.putIfAbsent(CompactId.of(id), id);
+        }
+
+        var componentLists = new HashMap<CompactId, List<Component<D>>>();
+        var ids = List.copyOf(requested.values());
+        var timer = timer(RegistryMetrics.Operation.FIND_BY_ENTITY_IDS);
+        try (var lease = lease(session)) {
+            for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+                var chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+                var sql = planCache.get(new FindByEntityIdsShape(chunk.size(), typeIds.size()),
+                        shape -> snapshots
+                                ? SNAPSHOT_QUERY.formatted(SNAPSHOT_BY_ENTITY_IDS.formatted(placeholders(shape.idCount())), typePlaceholder(shape.typeCount()))
+                                : FIND_BY_ENTITY_IDS_QUERY.formatted(placeholders(shape.idCount()), typePlaceholder(shape.typeCount())));
+                var stmt = lease.prepare(sql);
+                int paramIdx = 1;
+                stmt.setInt(paramIdx++, Byte.toUnsignedInt(system.id().value()));
+                for (Id id : chunk) {
+                    stmt.setBytes(paramIdx++, id.bytes());
+                }
+                for (Integer typeId : typeIds) {
+                    stmt.setInt(paramIdx++, typeId);
+                }
+                try (var result = stmt.executeQuery()) {
+                    while (result.next()) {
+                        var component = readComponent(result, timer);
+                        componentLists.computeIfAbsent(CompactId.of(component.entityId()), k -> new ArrayList<>())
+                                .add(component);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw timer.failed(new RuntimeException(e));
+        } catch (RuntimeException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.close();
+        }
+
+        var entities = new LinkedHashMap<Id, Entity<D>>();
+        for (var entry : requested.entrySet()) {
+            var componentList = componentLists.get(entry.getKey());
+            if (componentList != null) {
+                entities.put(entry.getValue(), new Entity<>(entry.getValue(), Collections.unmodifiableList(componentList)));
+            }
+        }
+        return entities;
+    }
+
+    private Page<D> find(Query.PagedQuery.ByIndexQuery<D> query, PinnedSession session) {
+        var index = indexes.get(query.indexName());
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown index: " + query.indexName());
+        }
+
+        var entityIds = new ArrayList<Id>(query.limit());
+        var sql = planCache.get(new FindByIndexShape(query.after() != null),
+                shape -> FIND_BY_INDEX_QUERY.formatted(shape.hasAfter() ? "AND entity_id > ?" : ""));
+        var timer = timer(RegistryMetrics.Operation.FIND_BY_INDEX);
+        try (var lease = lease(session)) {
+            var stmt = lease.prepare(sql);
+            int paramIdx = 1;
+            stmt.setInt(paramIdx++, Byte.toUnsignedInt(system.id().value()));
+            stmt.setString(paramIdx++, index.name());
+            stmt.setBytes(paramIdx++, sha256(query.key()));
+            if (query.after() != null) {
+                stmt.setBytes(paramIdx++, query.after().bytes());
+            }
+            stmt.setInt(paramIdx, query.limit());
+            try (var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    entityIds.add(CompactId.fromBytes(result.getBytes("entity_id")));
+                }
+            }
+            timer.rows(entityIds.size(), 0);
+        } catch (SQLException e) {
+            throw timer.failed(new RuntimeException(e));
+        } catch (RuntimeException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.close();
+        }
+
+        if (entityIds.isEmpty()) {
+            return new Page<>(List.of(), null);
+        }
+
+        // the indexed component is needed to drop entries whose entity no longer matches the key
+        var selectedTypes = query.selectedTypes();
+        var fetchedTypes = selectedTypes.isEmpty() || selectedTypes.contains(index.type())
+                ? selectedTypes
+                : concat(selectedTypes, index.type());
+        var found = find(new Query.MultiQuery.ByEntityIdsQuery<>(entityIds, fetchedTypes), session);
+        var entities = new ArrayList<Entity<D>>(found.size());
+        for (var entity : found.values()) {
+            var component = entity.getComponentOrNull(index.type());
+            if (component == null || !query.key().equals(index.keyOf(component.data()))) {
+                continue;
+            }
+            if (fetchedTypes != selectedTypes) {
+                var componentList = new ArrayList<Component<D>>();
+                for (var c : entity.componentList()) {
+                    if (selectedTypes.contains(c.dataType())) {
+                        componentList.add(c);
+                    }
+                }
+                if (componentList.isEmpty()) {
+                    continue;
+                }
+                entity = new Entity<>(entity.id(), Collections.unmodifiableList(componentList));
+            }
+            entities.add(entity);
+        }
+        var next = entityIds.size() == query.limit() ? entityIds.getLast() : null;
+        return new Page<>(entities, next);
+    }
+
+    private static <T> List<T> concat(List<T> list, T element) {
+        var result = new ArrayList<T>(list.size() + 1);
+        result.addAll(list);
+        result.add(element);
+        return result;
+    }
 }
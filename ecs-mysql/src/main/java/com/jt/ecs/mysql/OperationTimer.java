@@ -0,0 +1,67 @@
+package com.jt.ecs.mysql;
+
+import com.jt.ecs.api.RegistryMetrics;
+
+// Accumulates rows and payload size for one registry operation and reports them with its latency on close.
+// With metrics disabled every operation shares DISABLED, which neither reads the clock nor allocates.
+class OperationTimer implements AutoCloseable {
+    final static OperationTimer DISABLED = new OperationTimer(RegistryMetrics.NOOP, null, null, 0) {
+        @Override
+        void row(long payloadSize) {
+        }
+
+        @Override
+        void rows(int rows, long payloadSize) {
+        }
+
+        @Override
+        <E extends Throwable> E failed(E error) {
+            return error;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final RegistryMetrics metrics;
+    private final RegistryMetrics.Operation operation;
+    private final Object started;
+    private final long startNanos;
+    private int rows;
+    private long payloadSize;
+    private Throwable error;
+
+    private OperationTimer(RegistryMetrics metrics, RegistryMetrics.Operation operation, Object started, long startNanos) {
+        this.metrics = metrics;
+        this.operation = operation;
+        this.started = started;
+        this.startNanos = startNanos;
+    }
+
+    static OperationTimer start(RegistryMetrics metrics, RegistryMetrics.Operation operation) {
+        return metrics.enabled()
+                ? new OperationTimer(metrics, operation, metrics.operationStarted(operation), System.nanoTime())
+                : DISABLED;
+    }
+
+    void row(long payloadSize) {
+        this.rows++;
+        this.payloadSize += payloadSize;
+    }
+
+    void rows(int rows, long payloadSize) {
+        this.rows += rows;
+        this.payloadSize += payloadSize;
+    }
+
+    <E extends Throwable> E failed(E error) {
+        this.error = error;
+        return error;
+    }
+
+    @Override
+    public void close() {
+        metrics.recordOperation(started, operation, System.nanoTime() - startNanos, rows, payloadSize, error);
+    }
+}
@@ -0,0 +1,52 @@
+package com.jt.ecs.mysql;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+class PlanCache {
+    private final static int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    private final ConcurrentHashMap<Object, Object> plans = new ConcurrentHashMap<>();
+    private final int maximumSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    PlanCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    PlanCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    <K, P> P get(K shape, Function<K, P> planner) {
+        return get(shape, UnaryOperator.identity(), planner);
+    }
+
+    // shapes are small records (arity, row count, column set), once the cache is full new shapes are planned but not kept.
+    // detach copies a shape that is only a view over caller data before it is retained as a key
+    @SuppressWarnings("unchecked")
+    <K, P> P get(K shape, UnaryOperator<K> detach, Function<K, P> planner) {
+        var plan = (P) plans.get(shape);
+        if (plan != null) {
+            hits.increment();
+            return plan;
+        }
+
+        misses.increment();
+        plan = planner.apply(shape);
+        if (plans.size() < maximumSize) {
+            var existing = (P) plans.putIfAbsent(detach.apply(shape), plan);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return plan;
+    }
+
+    PlanCacheStats stats() {
+        return new PlanCacheStats(hits.sum(), misses.sum(), plans.size());
+    }
+}
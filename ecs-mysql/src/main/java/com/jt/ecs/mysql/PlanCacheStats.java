@@ -0,0 +1,9 @@
+package com.jt.ecs.mysql;
+
+public record PlanCacheStats(long hits, long misses, int size) {
+
+    public double hitRatio() {
+        var requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
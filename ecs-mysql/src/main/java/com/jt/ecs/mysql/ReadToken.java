@@ -0,0 +1,6 @@
+package com.jt.ecs.mysql;
+
+// GTID set the primary had executed right after a write committed. A replica that has applied this set
+// has also applied the write.
+public record ReadToken(String gtidSet) {
+}
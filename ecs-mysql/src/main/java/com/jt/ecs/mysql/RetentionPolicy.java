@@ -0,0 +1,30 @@
+package com.jt.ecs.mysql;
+
+import java.time.Duration;
+
+// How many versions of each component a system keeps, the latest one always counts. Maintenance deletes an
+// older version once it has been out of the kept versions for minAge, so change feed readers can still see it.
+public record RetentionPolicy(int keepVersions, Duration minAge) {
+    public final static RetentionPolicy KEEP_ALL = new RetentionPolicy(Integer.MAX_VALUE, Duration.ZERO);
+
+    public RetentionPolicy {
+        if (keepVersions < 1) {
+            throw new IllegalArgumentException("At least the latest version must be kept: " + keepVersions);
+        }
+        if (minAge.isNegative()) {
+            throw new IllegalArgumentException("Minimum age must not be negative: " + minAge);
+        }
+    }
+
+    public static RetentionPolicy keepLatest(int versions) {
+        return new RetentionPolicy(versions, Duration.ZERO);
+    }
+
+    public RetentionPolicy withMinAge(Duration minAge) {
+        return new RetentionPolicy(keepVersions, minAge);
+    }
+
+    boolean prunes() {
+        return keepVersions != Integer.MAX_VALUE;
+    }
+}
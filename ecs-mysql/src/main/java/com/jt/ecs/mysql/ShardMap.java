@@ -0,0 +1,110 @@
+package com.jt.ecs.mysql;
+
+import com.jt.ecs.api.CompactId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Versioned assignment of entities and unique keys to shards using jump consistent hashing. Shards can
+// only be appended, so growing from n to m shards moves keys only onto the new shards; a map keeps its
+// predecessor so reads can still find data that was written under an older version.
+public final class ShardMap<D> {
+    private final int version;
+    private final List<MysqlRegistry<D>> shards;
+    private final ShardMap<D> previous;
+
+    private ShardMap(int version, List<MysqlRegistry<D>> shards, ShardMap<D> previous) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Shard map needs at least one shard");
+        }
+        this.version = version;
+        this.shards = List.copyOf(shards);
+        this.previous = previous;
+    }
+
+    public static <D> ShardMap<D> of(List<MysqlRegistry<D>> shards) {
+        return new ShardMap<>(1, shards, null);
+    }
+
+    public ShardMap<D> withAddedShards(List<MysqlRegistry<D>> added) {
+        var next = new ArrayList<>(shards);
+        next.addAll(added);
+        return new ShardMap<>(version + 1, next, this);
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public List<MysqlRegistry<D>> shards() {
+        return shards;
+    }
+
+    int shardFor(CompactId entityId) {
+        return bucket(mix(entityId.high() ^ Long.rotateLeft(entityId.low(), 32)), shards.size());
+    }
+
+    // the hash is already a SHA-256 digest, its first 8 bytes are uniformly distributed
+    int shardFor(byte[] typeAndDataHash) {
+        long key = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            key = (key << 8) | (typeAndDataHash[i] & 0xff);
+        }
+        return bucket(key, shards.size());
+    }
+
+    MysqlRegistry<D> entityShard(CompactId entityId) {
+        return shards.get(shardFor(entityId));
+    }
+
+    MysqlRegistry<D> claimShard(byte[] typeAndDataHash) {
+        return shards.get(shardFor(typeAndDataHash));
+    }
+
+    // shards that held the entity under older versions, newest first and excluding the current one
+    List<MysqlRegistry<D>> previousEntityShards(CompactId entityId) {
+        var result = new ArrayList<MysqlRegistry<D>>(0);
+        var current = entityShard(entityId);
+        for (var map = previous; map != null; map = map.previous) {
+            var shard = map.entityShard(entityId);
+            if (shard != current && !result.contains(shard)) {
+                result.add(shard);
+            }
+        }
+        return result;
+    }
+
+    List<MysqlRegistry<D>> previousClaimShards(byte[] typeAndDataHash) {
+        var result = new ArrayList<MysqlRegistry<D>>(0);
+        var current = claimShard(typeAndDataHash);
+        for (var map = previous; map != null; map = map.previous) {
+            var shard = map.claimShard(typeAndDataHash);
+            if (shard != current && !result.contains(shard)) {
+                result.add(shard);
+            }
+        }
+        return result;
+    }
+
+    // Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm"
+    static int bucket(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    // UUIDv7 ids are time ordered, spread their bits before bucketing
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,473 @@
+package com.jt.ecs.mysql;
+
+import com.jt.ecs.api.*;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.util.*;
+
+// Routes every entity to one shard of the current ShardMap by its id. Unique data is owned through a
+// unique_key_claim row on the shard picked by type_and_data_hash, so lookups by unique key touch one
+// claim shard and one entity shard. A write claims its unique data first and releases the claims
+// again when the entity shard rejects it, or the claims of the unique data it replaced once the entity
+// shard accepts it; a process that dies in between leaves a claim behind that still blocks the data.
+// Transactions must stay within one shard since shards commit independently.
+// An entity stays on the shard it was created on. Once shards are added, a write for an entity the current
+// map places elsewhere looks for it on the shards of older map versions first, so all its components stay
+// together and replacing or duplicating one is still checked against the others.
+public class ShardedRegistry<D> implements Registry<D> {
+    private final static String CLAIM = "INSERT INTO unique_key_claim (system_id, type_and_data_hash, entity_id, created_at) VALUES (?, ?, ?, ?)";
+    private final static String FIND_CLAIM = "SELECT entity_id FROM unique_key_claim WHERE system_id = ? AND type_and_data_hash = ?";
+    private final static String RELEASE_CLAIM = "DELETE FROM unique_key_claim WHERE system_id = ? AND type_and_data_hash = ? AND entity_id = ?";
+    private final static String HOLDS_ENTITY = "SELECT 1 FROM component WHERE system_id = ? AND entity_id = ? LIMIT 1";
+    private final static String CREATE_CURSOR = "INSERT INTO change_cursor (system_id, generation, positions, previous_positions) VALUES (?, 1, ?, ?)";
+    private final static String FIND_CURSOR = "SELECT generation, positions, previous_positions FROM change_cursor WHERE system_id = ? AND id = ?";
+    private final static String ADVANCE_CURSOR = """
+            UPDATE change_cursor SET generation = generation + 1, previous_positions = positions, positions = ?
+            WHERE system_id = ? AND id = ? AND generation = ?""";
+    private final static String REPLACE_POSITIONS = "UPDATE change_cursor SET positions = ? WHERE system_id = ? AND id = ? AND generation = ?";
+    // the low bits of a cursor hold the generation, the rest the change_cursor row id
+    private final static int GENERATION_BITS = 20;
+    private final static long GENERATION_MASK = (1L << GENERATION_BITS) - 1;
+
+    private record Claim<D>(MysqlRegistry<D> shard, byte[] hash, CompactId entityId) {}
+
+    private final ComponentSystem<D> system;
+    private final Clock clock = Clock.systemUTC();
+    private volatile ShardMap<D> shardMap;
+
+    public ShardedRegistry(ComponentSystem<D> system, ShardMap<D> shardMap) {
+        this.system = system;
+        this.shardMap = shardMap;
+    }
+
+    public ShardMap<D> shardMap() {
+        return shardMap;
+    }
+
+    // reads fall back to the shards of older versions, so data can be moved onto added shards in the background
+    public synchronized void updateShardMap(ShardMap<D> next) {
+        if (next.version() <= shardMap.version()) {
+            throw new IllegalArgumentException("Shard map version " + next.version() + " is not newer than " + shardMap.version());
+        }
+        shardMap = next;
+    }
+
+    @Override
+    public void execute(Transaction<D> transaction) {
+        var components = transaction.execute();
+        if (components.isEmpty()) {
+            return;
+        }
+        var map = shardMap;
+        var owners = new HashMap<CompactId, MysqlRegistry<D>>();
+        MysqlRegistry<D> shard = null;
+        for (var component : components) {
+            var owner = owners.computeIfAbsent(CompactId.of(component.entityId()), entityId -> owner(map, entityId));
+            if (shard != null && owner != shard) {
+                throw new IllegalArgumentException("Transaction spans more than one shard");
+            }
+            shard = owner;
+        }
+        var target = shard;
+        var replaced = replacedUniqueData(target, components);
+
+        var claims = new ArrayList<Claim<D>>();
+        try {
+            for (var component : components) {
+                if (component.unique()) {
+                    var claim = claim(map, component);
+                    if (claim != null) {
+                        claims.add(claim);
+                    }
+                }
+            }
+            target.execute(() -> components);
+        } catch (RuntimeException e) {
+            for (var claim : claims) {
+                try {
+                    release(claim);
+                } catch (RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+
+        var kept = new ArrayList<byte[]>();
+        for (var component : components) {
+            if (component.unique()) {
+                kept.add(target.uniqueKeyHash(component.data()));
+            }
+        }
+        for (var old : replaced) {
+            var hash = target.uniqueKeyHash(old.data());
+            if (kept.stream().noneMatch(k -> Arrays.equals(k, hash))) {
+                release(map, hash, CompactId.of(old.entityId()));
+            }
+        }
+    }
+
+    // the unique components the write replaces, read before it so their claims can be released after it
+    private List<Component<D>> replacedUniqueData(MysqlRegistry<D> target, List<Component<D>> components) {
+        var replaced = new ArrayList<Component<D>>(0);
+        var entities = new HashMap<CompactId, Optional<Entity<D>>>();
+        for (var component : components) {
+            if (component.version() == 0) {
+                continue;
+            }
+            var entity = entities.computeIfAbsent(CompactId.of(component.entityId()),
+                    entityId -> target.execute(Query.byEntityId(component.entityId())));
+            var current = entity.flatMap(e -> e.componentList().stream()
+                    .filter(c -> c.dataType() == component.dataType() && c.version() == component.version() - 1)
+                    .findFirst());
+            if (current.isPresent() && current.get().unique()) {
+                replaced.add(current.get());
+            }
+        }
+        return replaced;
+    }
+
+    @Override
+    public Optional<Entity<D>> execute(Query.SingletonQuery<D> query) {
+        return switch (query) {
+            case Query.SingletonQuery.ByEntityIdQuery<D> q -> find(shardMap, q.id(), q.selectedTypes());
+            case Query.SingletonQuery.ByUniqueKey<D> q -> find(q);
+        };
+    }
+
+    @Override
+    public Map<Id, Entity<D>> execute(Query.MultiQuery<D> query) {
+        return switch (query) {
+            case Query.MultiQuery.ByEntityIdsQuery<D> q -> find(q);
+        };
+    }
+
+    // Index entries live with their entity, so every shard is asked for a page. A shard with more entries
+    // only vouches for ids up to its own cursor, the merged page stops at the smallest of those.
+    @Override
+    public Page<D> execute(Query.PagedQuery<D> query) {
+        var merged = new TreeMap<CompactId, Entity<D>>();
+        CompactId bound = null;
+        for (var shard : shardMap.shards()) {
+            var page = shard.execute(query);
+            for (var entity : page.entities()) {
+                merged.putIfAbsent(CompactId.of(entity.id()), entity);
+            }
+            if (page.hasNext()) {
+                var next = CompactId.of(page.next());
+                bound = bound == null || next.compareTo(bound) < 0 ? next : bound;
+            }
+        }
+
+        var entities = new ArrayList<>((bound == null ? merged : merged.headMap(bound, true)).values());
+        if (entities.size() > limit(query)) {
+            entities = new ArrayList<>(entities.subList(0, limit(query)));
+            bound = CompactId.of(entities.getLast().id());
+        }
+        return new Page<>(entities, bound);
+    }
+
+    private static int limit(Query.PagedQuery<?> query) {
+        return switch (query) {
+            case Query.PagedQuery.ByIndexQuery<?> q -> q.limit();
+        };
+    }
+
+    // Sequences are allocated per shard, so the feed keeps a position in every shard's own feed. A consumer's
+    // positions live in one change_cursor row on the first shard, created by its first call with cursor 0. Every
+    // call that makes progress moves the row to its next generation, and the cursor names the row and generation.
+    // The row keeps the positions of the generation before as well, so repeating the last call after a failure
+    // reads the same changes again; older cursors of the row are rejected. Changes keep their order within a
+    // shard, and so per entity, and carry their shard's sequence. Shards are read in turn from one picked by the
+    // generation, so a busy shard can't starve the others.
+    @Override
+    public ChangeBatch<D> changesSince(long cursor, List<Class<? extends D>> types, int batchSize) {
+        var shards = shardMap.shards();
+        var first = shards.getFirst();
+        var row = cursor >>> GENERATION_BITS;
+        var generation = cursor & GENERATION_MASK;
+        var saved = cursor == 0 ? null : findCursor(first, row, shards.size());
+        long[] positions;
+        if (saved == null) {
+            positions = new long[shards.size()];
+        } else if (generation == (saved.generation() & GENERATION_MASK)) {
+            positions = saved.positions();
+        } else if (generation == ((saved.generation() - 1) & GENERATION_MASK)) {
+            positions = saved.previousPositions();
+        } else {
+            throw new IllegalArgumentException("Change feed cursor " + cursor + " is older than its last two generations");
+        }
+
+        var next = positions.clone();
+        var changes = new ArrayList<Change<D>>();
+        var start = (int) (generation % shards.size());
+        for (int i = 0; i < shards.size() && changes.size() < batchSize; i++) {
+            var shard = (start + i) % shards.size();
+            var batch = shards.get(shard).changesSince(positions[shard], types, batchSize - changes.size());
+            changes.addAll(batch.changes());
+            next[shard] = batch.cursor();
+        }
+        if (Arrays.equals(positions, next)) {
+            return new ChangeBatch<>(changes, cursor);
+        }
+        if (saved == null) {
+            return new ChangeBatch<>(changes, cursor(createCursor(first, positions, next), 1));
+        }
+        if (positions == saved.positions()) {
+            updateCursor(first, ADVANCE_CURSOR, row, saved.generation(), next);
+            return new ChangeBatch<>(changes, cursor(row, saved.generation() + 1));
+        }
+        // a repeated call replaces what the last one read
+        updateCursor(first, REPLACE_POSITIONS, row, saved.generation(), next);
+        return new ChangeBatch<>(changes, cursor(row, saved.generation()));
+    }
+
+    private record SavedCursor(long generation, long[] positions, long[] previousPositions) {}
+
+    static long cursor(long row, long generation) {
+        return row << GENERATION_BITS | (generation & GENERATION_MASK);
+    }
+
+    static String encodePositions(long[] positions) {
+        var joiner = new StringJoiner(",");
+        for (var position : positions) {
+            joiner.add(Long.toString(position));
+        }
+        return joiner.toString();
+    }
+
+    // shards added after the cursor was saved start from the beginning of their feed
+    static long[] decodePositions(String encoded, int shards) {
+        var parts = encoded.split(",");
+        if (parts.length > shards) {
+            throw new IllegalArgumentException("Cursor has positions for " + parts.length + " shards, the map has " + shards);
+        }
+        var positions = new long[shards];
+        for (int i = 0; i < parts.length; i++) {
+            positions[i] = Long.parseLong(parts[i]);
+        }
+        return positions;
+    }
+
+    private SavedCursor findCursor(MysqlRegistry<D> shard, long row, int shards) {
+        try (var conn = shard.connection();
+             var stmt = conn.prepareStatement(FIND_CURSOR)) {
+            stmt.setInt(1, systemId());
+            stmt.setLong(2, row);
+            try (var result = stmt.executeQuery()) {
+                if (!result.next()) {
+                    throw new IllegalArgumentException("Unknown change feed cursor row: " + row);
+                }
+                return new SavedCursor(result.getLong("generation"),
+                        decodePositions(result.getString("positions"), shards),
+                        decodePositions(result.getString("previous_positions"), shards));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private long createCursor(MysqlRegistry<D> shard, long[] previous, long[] positions) {
+        try (var conn = shard.connection();
+             var stmt = conn.prepareStatement(CREATE_CURSOR, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, systemId());
+            stmt.setString(2, encodePositions(positions));
+            stmt.setString(3, encodePositions(previous));
+            stmt.executeUpdate();
+            try (var keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                return keys.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void updateCursor(MysqlRegistry<D> shard, String sql, long row, long generation, long[] positions) {
+        try (var conn = shard.connection();
+             var stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, encodePositions(positions));
+            stmt.setInt(2, systemId());
+            stmt.setLong(3, row);
+            stmt.setLong(4, generation);
+            if (stmt.executeUpdate() != 1) {
+                throw new IllegalStateException("Change feed cursor row " + row + " was advanced by another call");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private int systemId() {
+        return Byte.toUnsignedInt(system.id().value());
+    }
+
+    // the shard the entity was created on, or the current map's shard for a new entity
+    private MysqlRegistry<D> owner(ShardMap<D> map, CompactId entityId) {
+        var current = map.entityShard(entityId);
+        var older = map.previousEntityShards(entityId);
+        if (older.isEmpty() || holdsEntity(current, entityId)) {
+            return current;
+        }
+        for (var shard : older) {
+            if (holdsEntity(shard, entityId)) {
+                return shard;
+            }
+        }
+        return current;
+    }
+
+    private boolean holdsEntity(MysqlRegistry<D> shard, CompactId entityId) {
+        try (var conn = shard.connection();
+             var stmt = conn.prepareStatement(HOLDS_ENTITY)) {
+            stmt.setInt(1, systemId());
+            stmt.setBytes(2, entityId.bytes());
+            try (var result = stmt.executeQuery()) {
+                return result.next();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // null when the entity already owns the data, e.g. when a write is retried
+    private Claim<D> claim(ShardMap<D> map, Component<D> component) {
+        // shards share the system and its codec, so any of them hashes like the one storing the component
+        var hash = map.shards().getFirst().uniqueKeyHash(component.data());
+        var entityId = CompactId.of(component.entityId());
+        for (var older : map.previousClaimShards(hash)) {
+            var owner = findClaim(older, hash);
+            if (owner != null && !owner.equals(entityId)) {
+                throw new DuplicateUniqueDataException("Unique data is owned by entity " + owner);
+            }
+        }
+
+        var shard = map.claimShard(hash);
+        try (var conn = shard.connection();
+             var stmt = conn.prepareStatement(CLAIM)) {
+            stmt.setInt(1, systemId());
+            stmt.setBytes(2, hash);
+            stmt.setBytes(3, entityId.bytes());
+            stmt.setTimestamp(4, new Timestamp(clock.millis()));
+            stmt.executeUpdate();
+            return new Claim<>(shard, hash, entityId);
+        } catch (SQLIntegrityConstraintViolationException e) {
+            if (entityId.equals(findClaim(shard, hash))) {
+                return null;
+            }
+            throw new DuplicateUniqueDataException(e);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // The write has committed by now, so a claim that can't be deleted stays behind like one left by a crash
+    // rather than failing it. The claim may sit on the claim shard of any map version.
+    private void release(ShardMap<D> map, byte[] hash, CompactId entityId) {
+        var shards = new ArrayList<MysqlRegistry<D>>();
+        shards.add(map.claimShard(hash));
+        shards.addAll(map.previousClaimShards(hash));
+        for (var shard : shards) {
+            try {
+                release(new Claim<>(shard, hash, entityId));
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+
+    private void release(Claim<D> claim) {
+        try (var conn = claim.shard().connection();
+             var stmt = conn.prepareStatement(RELEASE_CLAIM)) {
+            stmt.setInt(1, systemId());
+            stmt.setBytes(2, claim.hash());
+            stmt.setBytes(3, claim.entityId().bytes());
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private CompactId findClaim(MysqlRegistry<D> shard, byte[] hash) {
+        try (var conn = shard.connection();
+             var stmt = conn.prepareStatement(FIND_CLAIM)) {
+            stmt.setInt(1, systemId());
+            stmt.setBytes(2, hash);
+            try (var result = stmt.executeQuery()) {
+                return result.next() ? CompactId.fromBytes(result.getBytes("entity_id")) : null;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Optional<Entity<D>> find(ShardMap<D> map, Id id, List<Class<? extends D>> selectedTypes) {
+        var compactId = CompactId.of(id);
+        var query = Query.byEntityId(id, selectedTypes);
+        var entity = map.entityShard(compactId).execute(query);
+        for (var older : map.previousEntityShards(compactId)) {
+            if (entity.isPresent()) {
+                break;
+            }
+            entity = older.execute(query);
+        }
+        return entity;
+    }
+
+    private Optional<Entity<D>> find(Query.SingletonQuery.ByUniqueKey<D> query) {
+        var map = shardMap;
+        var hash = map.shards().getFirst().uniqueKeyHash(query.keyData());
+        var owner = findClaim(map.claimShard(hash), hash);
+        for (var older : map.previousClaimShards(hash)) {
+            if (owner != null) {
+                break;
+            }
+            owner = findClaim(older, hash);
+        }
+        return owner == null
+                ? Optional.empty()
+                : find(map, owner, query.selectedTypes());
+    }
+
+    private Map<Id, Entity<D>> find(Query.MultiQuery.ByEntityIdsQuery<D> query) {
+        var map = shardMap;
+        var found = new HashMap<CompactId, Entity<D>>();
+        var byShard = new LinkedHashMap<MysqlRegistry<D>, List<Id>>();
+        for (var id : query.ids()) {
+            byShard.computeIfAbsent(map.entityShard(CompactId.of(id)), k -> new ArrayList<>()).add(id);
+        }
+        collect(byShard, query.selectedTypes(), found);
+
+        var fallback = new LinkedHashMap<MysqlRegistry<D>, List<Id>>();
+        for (var id : query.ids()) {
+            var compactId = CompactId.of(id);
+            if (!found.containsKey(compactId)) {
+                for (var older : map.previousEntityShards(compactId)) {
+                    fallback.computeIfAbsent(older, k -> new ArrayList<>()).add(id);
+                }
+            }
+        }
+        collect(fallback, query.selectedTypes(), found);
+
+        var entities = new LinkedHashMap<Id, Entity<D>>();
+        for (var id : query.ids()) {
+            var entity = found.get(CompactId.of(id));
+            if (entity != null) {
+                entities.putIfAbsent(id, entity);
+            }
+        }
+        return entities;
+    }
+
+    private static <D> void collect(Map<MysqlRegistry<D>, List<Id>> byShard, List<Class<? extends D>> selectedTypes,
+                                    Map<CompactId, Entity<D>> found) {
+        byShard.forEach((shard, ids) -> {
+            for (var entity : shard.execute(Query.byEntityIds(ids, selectedTypes)).values()) {
+                found.putIfAbsent(CompactId.of(entity.id()), entity);
+            }
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package com.jt.ecs.mysql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.function.LongConsumer;
+
+// Rewrites entity_snapshot from the component table, one batch of entities per statement and commit.
+// Safe to run next to writers: the insert ... select locks the component rows of the batch while it
+// reads them, and writes that commit afterwards patch the rebuilt snapshot as usual.
+public class SnapshotRebuilder {
+    private final static String NEXT_BATCH = """
+            SELECT DISTINCT entity_id
+            FROM component
+            WHERE system_id = ? AND entity_id %s ?
+            ORDER BY entity_id
+            LIMIT ?""";
+
+    // a snapshot member holds either data or data_bin, like the ones written by ComponentRows.snapshotMember
+    private final static String REBUILD = """
+            INSERT INTO entity_snapshot (system_id, entity_id, components)
+            SELECT * FROM (
+                SELECT
+                    system_id,
+                    entity_id,
+                    JSON_OBJECTAGG(CAST(type AS CHAR), JSON_ARRAY(JSON_REMOVE(JSON_OBJECT(
+                        'id', HEX(id),
+                        'type', type,
+                        'data', data,
+                        'data_bin', TO_BASE64(data_bin),
+                        'created_at', created_at,
+                        'unique_flag', unique_flag,
+                        'version', version), IF(data_bin IS NULL, '$.data_bin', '$.data')))) AS latest
+                FROM (
+                    SELECT
+                        system_id, entity_id, type, id, data, data_bin, created_at, unique_flag, version,
+                        ROW_NUMBER() OVER (PARTITION BY entity_id, type ORDER BY version DESC) AS rn
+                    FROM component
+                    WHERE system_id = ? AND entity_id >= ? AND entity_id <= ?
+                ) ranked
+                WHERE rn = 1
+                GROUP BY system_id, entity_id
+            ) rebuilt
+            ON DUPLICATE KEY UPDATE components = rebuilt.latest""";
+
+    private final MysqlRegistry<?> registry;
+    private final int batchSize;
+
+    public SnapshotRebuilder(MysqlRegistry<?> registry, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.registry = registry;
+        this.batchSize = batchSize;
+    }
+
+    // returns the number of rebuilt snapshots, progress receives the running total after every batch
+    public long rebuild(LongConsumer progress) {
+        var systemId = Byte.toUnsignedInt(registry.system().id().value());
+        long rebuilt = 0;
+        try (var conn = registry.connection();
+             var first = conn.prepareStatement(NEXT_BATCH.formatted(">="));
+             var next = conn.prepareStatement(NEXT_BATCH.formatted(">"));
+             var rebuild = conn.prepareStatement(REBUILD)) {
+            var batch = nextBatch(first, systemId, new byte[16]);
+            while (batch.count() > 0) {
+                rebuild.setInt(1, systemId);
+                rebuild.setBytes(2, batch.from());
+                rebuild.setBytes(3, batch.to());
+                rebuild.executeUpdate();
+                rebuilt += batch.count();
+                progress.accept(rebuilt);
+                batch = nextBatch(next, systemId, batch.to());
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return rebuilt;
+    }
+
+    private record Batch(byte[] from, byte[] to, int count) {}
+
+    private Batch nextBatch(PreparedStatement stmt, int systemId, byte[] after) throws SQLException {
+        stmt.setInt(1, systemId);
+        stmt.setBytes(2, after);
+        stmt.setInt(3, batchSize);
+        byte[] from = null;
+        byte[] to = null;
+        int count = 0;
+        try (var result = stmt.executeQuery()) {
+            while (result.next()) {
+                to = result.getBytes("entity_id");
+                if (from == null) {
+                    from = to;
+                }
+                count++;
+            }
+        }
+        return new Batch(from, to, count);
+    }
+}
@@ -0,0 +1,18 @@
+package com.jt.ecs.mysql;
+
+import java.util.List;
+
+// Sizes of the schema's tables, partitions and indexes as InnoDB estimates them. The estimates follow the
+// persistent statistics, which InnoDB refreshes in the background or ANALYZE TABLE refreshes at once.
+public record StorageStats(List<Table> tables, List<Partition> partitions, List<Index> indexes) {
+
+    public record Table(String name, long estimatedRows, long dataBytes, long indexBytes) {
+    }
+
+    public record Partition(String table, String name, long estimatedRows, long dataBytes, long indexBytes) {
+    }
+
+    // the size of an index of a partitioned table is summed over its partitions
+    public record Index(String table, String name, long bytes) {
+    }
+}
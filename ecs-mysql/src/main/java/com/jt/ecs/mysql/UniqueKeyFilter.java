@@ -0,0 +1,87 @@
+package com.jt.ecs.mysql;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bloom filter over type_and_data_hash values. The hashes are SHA-256 digests, so their first two longs
+// already are independent uniform hashes and the k probes are derived from them by double hashing.
+// Bits are only ever set, with a CAS per word, so concurrent adds and lookups need no lock.
+class UniqueKeyFilter {
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder added = new LongAdder();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder avoided = new LongAdder();
+
+    UniqueKeyFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys <= 0) {
+            throw new IllegalArgumentException("Expected keys must be positive: " + expectedKeys);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        var bits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        var wordCount = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * Math.log(2)));
+    }
+
+    private static long longAt(byte[] hash, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            value = (value << 8) | (hash[i] & 0xff);
+        }
+        return value;
+    }
+
+    void add(byte[] hash) {
+        var h1 = longAt(hash, 0);
+        var h2 = longAt(hash, Long.BYTES);
+        for (int i = 0; i < hashCount; i++) {
+            var bit = Math.floorMod(h1 + i * h2, bitCount);
+            var mask = 1L << bit;
+            var word = (int) (bit >>> 6);
+            var current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+        added.increment();
+    }
+
+    // false means the hash was definitely never added
+    boolean mightContain(byte[] hash) {
+        var contained = probe(hash);
+        counted(!contained);
+        return contained;
+    }
+
+    // mightContain without counting the check, for a caller that may look again before answering
+    boolean probe(byte[] hash) {
+        var h1 = longAt(hash, 0);
+        var h2 = longAt(hash, Long.BYTES);
+        for (int i = 0; i < hashCount; i++) {
+            var bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // one lookup answered with the filter's help, avoided when it took no query
+    void counted(boolean avoidedQuery) {
+        checks.increment();
+        if (avoidedQuery) {
+            avoided.increment();
+        }
+    }
+
+    UniqueKeyFilterStats stats() {
+        var keys = added.sum();
+        var falsePositiveRate = Math.pow(1 - Math.exp(-hashCount * (double) keys / bitCount), hashCount);
+        return new UniqueKeyFilterStats(checks.sum(), avoided.sum(), keys, falsePositiveRate);
+    }
+}
@@ -0,0 +1,9 @@
+package com.jt.ecs.mysql;
+
+// checks is the number of unique-key lookups that consulted the filter, avoidedQueries those it answered alone
+public record UniqueKeyFilterStats(long checks, long avoidedQueries, long addedKeys, double expectedFalsePositiveRate) {
+
+    public double avoidedRatio() {
+        return checks == 0 ? 0 : (double) avoidedQueries / checks;
+    }
+}
@@ -3,7 +3,9 @@ create table component (
     system_id tinyint unsigned not null,
     entity_id binary(16) not null,
     type smallint unsigned not null,
-    data json not null,
+    data json null,
+    # encoded data of registries built with a ComponentCodec, set instead of data
+    data_bin mediumblob null,
     version smallint unsigned not null,
     sequence bigint default null,
     created_at timestamp not null,
@@ -13,12 +15,68 @@ create table component (
     unique key unique_entity_id_and_type (system_id, entity_id, type, version),
     unique key unique_type_and_data (system_id, type_and_data_hash, unique_flag),
     index (system_id, created_at),
-    index (system_id, sequence, type)
+    index (system_id, sequence, type),
+    check ((data is null) <> (data_bin is null))
 ) partition by list ( system_id ) (
+    # partitions of systems registered later are added by Maintenance.register
     partition system1 values in (1),
     partition system2 values in (2)
 );
 
+create table component_sequence (
+    system_id tinyint unsigned not null,
+    last_sequence bigint not null,
+    primary key (system_id)
+);
+
+# latest version of every component of an entity, keyed by type: {"<type>": [{"id", "type", "data", ...}]}
+create table entity_snapshot (
+    system_id tinyint unsigned not null,
+    entity_id binary(16) not null,
+    components json not null,
+    primary key (system_id, entity_id)
+);
+
+# one row per component that a declared SecondaryIndex maps to a key, written with the component
+create table component_index (
+    system_id tinyint unsigned not null,
+    index_name varchar(64) not null,
+    key_hash binary(32) not null,
+    entity_id binary(16) not null,
+    component_id binary(16) not null,
+    primary key (system_id, index_name, key_hash, entity_id, component_id)
+);
+
+# owner of each unique component's data, lives on the shard picked by type_and_data_hash when sharded
+create table unique_key_claim (
+    system_id tinyint unsigned not null,
+    type_and_data_hash binary(32) not null,
+    entity_id binary(16) not null,
+    created_at timestamp not null,
+    primary key (system_id, type_and_data_hash)
+);
+
+# positions of one consumer of a ShardedRegistry change feed in every shard's own feed, for the cursor's
+# current generation and the one before it. The cursor holds the row id and the generation.
+create table change_cursor (
+    id bigint not null auto_increment,
+    system_id tinyint unsigned not null,
+    generation bigint not null,
+    positions varchar(4096) not null,
+    previous_positions varchar(4096) not null,
+    primary key (id)
+);
+
+# chunks committed by a BulkImport, each recorded in the transaction that wrote its components
+create table bulk_import_chunk (
+    system_id tinyint unsigned not null,
+    import_name varchar(64) not null,
+    first_position bigint not null,
+    row_count int not null,
+    created_at timestamp not null,
+    primary key (system_id, import_name, first_position)
+);
+
 explain
 WITH TargetEntity AS (
     SELECT entity_id
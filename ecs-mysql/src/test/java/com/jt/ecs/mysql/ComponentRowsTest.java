@@ -0,0 +1,52 @@
+package com.jt.ecs.mysql;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComponentRowsTest {
+
+    @Test
+    public void testTsvEscaping() {
+        var rows = new ComponentRows(1, 2);
+        rows.add(new byte[]{0x01, 0x0a}, new byte[]{0x02}, 7, "{\"s\":\"a\\\"b\\tc\"}", new byte[]{(byte) 0xff}, true, 0);
+        rows.add(new byte[]{0x03}, new byte[]{0x04}, 8, "{\"s\":\"x\ty\"}", new byte[]{0x00}, false, 0);
+        rows.assignSequences(100);
+
+        var out = new StringBuilder();
+        rows.writeTsv(out, 0, 2, new Timestamp(1000));
+
+        assertEquals("""
+                1\t010a\t02\t7\t{"s":"a\\\\"b\\\\tc"}\t\\N\t0\t1000\tff\t1\t100
+                1\t03\t04\t8\t{"s":"x\\ty"}\t\\N\t0\t1000\t00\t\\N\t101
+                """, out.toString());
+    }
+
+    @Test
+    public void testDataLengthInUtf8Bytes() {
+        var value = "{\"s\":\"aé€😀\"}";
+        var rows = new ComponentRows(1, 1);
+        rows.add(new byte[]{0x01}, new byte[]{0x02}, 7, value, new byte[]{0x0f}, false, 0);
+
+        assertEquals(value.getBytes(StandardCharsets.UTF_8).length, rows.dataLength(0));
+        assertEquals(value.getBytes(StandardCharsets.UTF_8).length, rows.payloadSize());
+    }
+
+    @Test
+    public void testBinaryRows() {
+        var rows = new ComponentRows(1, 1);
+        rows.add(new byte[]{0x01}, new byte[]{0x02}, 7, new byte[]{0x00, 0x09, (byte) 0xfe}, new byte[]{0x0f}, false, 0);
+        rows.assignSequences(5);
+
+        var out = new StringBuilder();
+        rows.writeTsv(out, 0, 1, new Timestamp(1000));
+
+        assertEquals("1\t01\t02\t7\t\\N\t0009fe\t0\t1000\t0f\t\\N\t5\n", out.toString());
+        assertEquals(3, rows.payloadSize());
+        assertTrue(rows.snapshotMember(0, new Timestamp(1000)).contains("\"data_bin\":\"AAn+\""));
+        assertFalse(rows.snapshotMember(0, new Timestamp(1000)).contains("\"data\":"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.jt.ecs.mysql;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionLeaseTest {
+
+    // records the calls made on a connection and on the statements it prepared
+    static class Recorder {
+        final List<String> calls = new ArrayList<>();
+
+        Connection connection() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        calls.add("connection." + method.getName());
+                        return method.getName().equals("prepareStatement") ? statement((String) args[0]) : null;
+                    });
+        }
+
+        private PreparedStatement statement(String sql) {
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        calls.add(sql + "." + method.getName());
+                        return null;
+                    });
+        }
+    }
+
+    @Test
+    public void testOwnLeaseClosesEverything() throws SQLException {
+        var recorder = new Recorder();
+        try (var lease = ConnectionLease.of(recorder.connection())) {
+            lease.prepare("a");
+            lease.prepare("b");
+        }
+        assertEquals(List.of("connection.prepareStatement", "connection.prepareStatement", "a.close", "b.close", "connection.close"),
+                recorder.calls);
+    }
+
+    @Test
+    public void testPinnedLeaseReusesStatements() throws SQLException {
+        var recorder = new Recorder();
+        var lease = ConnectionLease.pinned(recorder.connection());
+        try (var operation = lease) {
+            assertSame(operation.prepare("a"), operation.prepare("a"));
+        }
+        try (var operation = lease) {
+            operation.prepare("a");
+        }
+        assertEquals(List.of("connection.prepareStatement", "a.clearParameters", "a.clearParameters"), recorder.calls);
+
+        lease.release();
+        assertEquals(List.of("connection.prepareStatement", "a.clearParameters", "a.clearParameters", "a.close", "connection.close"),
+                recorder.calls);
+    }
+}
@@ -0,0 +1,46 @@
+package com.jt.ecs.mysql;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashTest {
+
+    private static byte[] sha256(byte[] input) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(input);
+    }
+
+    @Test
+    public void testMatchesStoredHashes() throws NoSuchAlgorithmException {
+        // the hash written before the digest was reused, existing unique keys must still match
+        for (var type : new int[]{0, 7, 65535}) {
+            var data = "{\"key\":\"caf\u00e9\"}";
+            var expected = sha256((type + ":" + data).getBytes(StandardCharsets.UTF_8));
+            assertArrayEquals(expected, MysqlRegistry.hash(new TypeAndData(type, data)));
+        }
+    }
+
+    @Test
+    public void testBinaryHash() throws NoSuchAlgorithmException {
+        var data = new byte[]{0x00, (byte) 0xff, 0x3a};
+        var prefix = "42:".getBytes(StandardCharsets.US_ASCII);
+        var input = new byte[prefix.length + data.length];
+        System.arraycopy(prefix, 0, input, 0, prefix.length);
+        System.arraycopy(data, 0, input, prefix.length, data.length);
+        assertArrayEquals(sha256(input), MysqlRegistry.hash(42, data));
+        assertArrayEquals(MysqlRegistry.hash(new TypeAndData(42, "abc")), MysqlRegistry.hash(42, "abc".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testDigestIsNotShared() {
+        var first = MysqlRegistry.hash(1, new byte[]{1});
+        MysqlRegistry.hash(2, new byte[]{2});
+        assertArrayEquals(first, MysqlRegistry.hash(1, new byte[]{1}));
+        assertArrayEquals(first, CompletableFuture.supplyAsync(() -> MysqlRegistry.hash(1, new byte[]{1})).join());
+    }
+}
@@ -30,4 +30,29 @@ class InsertTest {
                 ValueWithType.NULL, row1.get("id"), row1.get("name"),
                 row2.get("extra_field"), row2.get("id"), row2.get("name")), insert.values());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPlanCacheReusesShape() {
+        var planCache = new PlanCache();
+        var first = Insert.of("testTable")
+                .withRows(List.of(Map.of("id", new ValueWithType(1L, JDBCType.BIGINT))))
+                .withPlanCache(planCache)
+                .build();
+        var second = Insert.of("testTable")
+                .withRows(List.of(Map.of("id", new ValueWithType(2L, JDBCType.BIGINT))))
+                .withPlanCache(planCache)
+                .build();
+        var twoRows = Insert.of("testTable")
+                .withRows(List.of(
+                        Map.of("id", new ValueWithType(3L, JDBCType.BIGINT)),
+                        Map.of("id", new ValueWithType(4L, JDBCType.BIGINT))))
+                .withPlanCache(planCache)
+                .build();
+
+        assertSame(first.sql(), second.sql());
+        assertEquals("insert into `testTable` (`id`) values (?),(?)", twoRows.sql());
+        assertEquals(List.of(new ValueWithType(2L, JDBCType.BIGINT)), second.values());
+        assertEquals(new PlanCacheStats(1, 2, 2), planCache.stats());
+        assertEquals(1.0 / 3, planCache.stats().hitRatio());
+    }
+}
@@ -0,0 +1,41 @@
+package com.jt.ecs.mysql;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MaintenanceTest {
+
+    @Test
+    public void testPartitionValues() {
+        assertEquals(Set.of(1), Maintenance.partitionValues("1"));
+        assertEquals(Set.of(1, 2, 200), Maintenance.partitionValues("1,2, 200"));
+        assertEquals(Set.of(), Maintenance.partitionValues(null));
+    }
+
+    @Test
+    public void testRetentionPolicy() {
+        assertFalse(RetentionPolicy.KEEP_ALL.prunes());
+        var policy = RetentionPolicy.keepLatest(3).withMinAge(Duration.ofDays(1));
+        assertTrue(policy.prunes());
+        assertEquals(3, policy.keepVersions());
+        assertEquals(Duration.ofDays(1), policy.minAge());
+        assertThrows(IllegalArgumentException.class, () -> RetentionPolicy.keepLatest(0));
+        assertThrows(IllegalArgumentException.class, () -> RetentionPolicy.keepLatest(1).withMinAge(Duration.ofSeconds(-1)));
+    }
+
+    @Test
+    public void testCutoffRoundsLikeCreatedAt() {
+        assertEquals(1000, Maintenance.cutoff(1499).getTime());
+        assertEquals(2000, Maintenance.cutoff(1500).getTime());
+        assertEquals(2000, Maintenance.cutoff(2000).getTime());
+    }
+
+    @Test
+    public void testBatchSizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> Maintenance.of(null).withBatchSize(0));
+    }
+}
@@ -0,0 +1,58 @@
+package com.jt.ecs.mysql;
+
+import com.jt.ecs.api.CompactId;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardMapTest {
+
+    private static MysqlRegistry<Object> shard() {
+        return new MysqlRegistry<>(null, null);
+    }
+
+    @Test
+    public void testBucketsAreBalanced() {
+        var counts = new int[8];
+        var random = new Random(42);
+        var map = ShardMap.of(List.of(shard(), shard(), shard(), shard(), shard(), shard(), shard(), shard()));
+        for (int i = 0; i < 80_000; i++) {
+            counts[map.shardFor(new CompactId(random.nextLong(), random.nextLong()))]++;
+        }
+        for (var count : counts) {
+            assertEquals(10_000, count, 500);
+        }
+    }
+
+    @Test
+    public void testAddedShardsOnlyReceiveKeys() {
+        var map = ShardMap.of(List.of(shard(), shard(), shard()));
+        var grown = map.withAddedShards(List.of(shard(), shard()));
+        assertEquals(1, map.version());
+        assertEquals(2, grown.version());
+
+        var random = new Random(7);
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            var id = new CompactId(random.nextLong(), random.nextLong());
+            var before = map.shardFor(id);
+            var after = grown.shardFor(id);
+            if (before != after) {
+                moved++;
+                assertTrue(after >= 3);
+                assertEquals(List.of(map.entityShard(id)), grown.previousEntityShards(id));
+            } else {
+                assertTrue(grown.previousEntityShards(id).isEmpty());
+            }
+        }
+        assertEquals(4_000, moved, 300);
+    }
+
+    @Test
+    public void testRejectsEmptyShards() {
+        assertThrows(IllegalArgumentException.class, () -> ShardMap.of(List.of()));
+    }
+}
@@ -0,0 +1,25 @@
+package com.jt.ecs.mysql;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedRegistryTest {
+
+    @Test
+    public void testCursorPositions() {
+        var positions = new long[]{0, 42, Long.MAX_VALUE};
+        assertEquals("0,42,9223372036854775807", ShardedRegistry.encodePositions(positions));
+        assertArrayEquals(positions, ShardedRegistry.decodePositions("0,42,9223372036854775807", 3));
+        // a shard added after the cursor was saved starts from the beginning
+        assertArrayEquals(new long[]{7, 0}, ShardedRegistry.decodePositions("7", 2));
+        assertThrows(IllegalArgumentException.class, () -> ShardedRegistry.decodePositions("1,2,3", 2));
+    }
+
+    @Test
+    public void testCursorHoldsRowAndGeneration() {
+        assertEquals((5L << 20) | 3, ShardedRegistry.cursor(5, 3));
+        // the generation wraps within its bits and leaves the row alone
+        assertEquals(ShardedRegistry.cursor(5, 1), ShardedRegistry.cursor(5, (1L << 20) + 1));
+    }
+}
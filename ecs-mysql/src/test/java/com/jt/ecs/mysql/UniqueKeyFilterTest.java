@@ -0,0 +1,54 @@
+package com.jt.ecs.mysql;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UniqueKeyFilterTest {
+
+    private static byte[] hash(int i) {
+        return MysqlRegistry.hash(new TypeAndData(1, "{\"key\":" + i + "}"));
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+        var filter = new UniqueKeyFilter(10_000, 0.01);
+        var added = new ArrayList<byte[]>();
+        for (int i = 0; i < 10_000; i++) {
+            var hash = hash(i);
+            filter.add(hash);
+            added.add(hash);
+        }
+        for (var hash : added) {
+            assertTrue(filter.mightContain(hash));
+        }
+        assertEquals(0, filter.stats().avoidedQueries());
+        assertEquals(10_000, filter.stats().addedKeys());
+    }
+
+    @Test
+    public void testFalsePositiveRateNearTarget() {
+        var filter = new UniqueKeyFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(hash(i));
+        }
+        int falsePositives = 0;
+        for (int i = 10_000; i < 110_000; i++) {
+            if (filter.mightContain(hash(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 1_500, "false positives: " + falsePositives);
+        var stats = filter.stats();
+        assertEquals(100_000 - falsePositives, stats.avoidedQueries());
+        assertEquals(0.01, stats.expectedFalsePositiveRate(), 0.005);
+    }
+
+    @Test
+    public void testRejectsInvalidSizing() {
+        assertThrows(IllegalArgumentException.class, () -> new UniqueKeyFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new UniqueKeyFilter(100, 1.5));
+    }
+}
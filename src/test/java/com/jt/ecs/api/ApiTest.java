@@ -1,31 +1,51 @@
 package com.jt.ecs.api;
 
 import com.jt.ecs.id.UniqueId;
+import com.jt.ecs.mysql.BulkImport;
+import com.jt.ecs.mysql.BulkImportProgress;
 import com.jt.ecs.mysql.ComponentSystem;
 import com.jt.ecs.mysql.DataMapper;
+import com.jt.ecs.mysql.GroupCommitWriter;
+import com.jt.ecs.mysql.Maintenance;
 import com.jt.ecs.mysql.MysqlRegistry;
+import com.jt.ecs.mysql.RetentionPolicy;
+import com.jt.ecs.mysql.ShardMap;
+import com.jt.ecs.mysql.ShardedRegistry;
+import com.jt.ecs.mysql.SnapshotRebuilder;
+import com.jt.ecs.mysql.SystemId;
 import com.jt.ecs.mysql.TypeAndData;
 import com.mysql.cj.jdbc.MysqlDataSource;
 import org.junit.jupiter.api.Test;
 import tools.jackson.databind.ObjectMapper;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ApiTest {
 
-    @Test
-    public void testApi() {
+    private static MysqlDataSource dataSource() {
+        return dataSource("ecs");
+    }
+
+    private static MysqlDataSource dataSource(String database) {
         var dataSource = new MysqlDataSource();
-        dataSource.setServerName("localhost");
-        dataSource.setPort(3306);
+        dataSource.setURL(MysqlRegistry.withStatementCache("jdbc:mysql://localhost:3306/" + database));
         dataSource.setUser("root");
         dataSource.setPassword("root");
-        dataSource.setDatabaseName("ecs");
+        return dataSource;
+    }
 
-        var registry = new MysqlRegistry<>(SystemData.SYSTEM, dataSource);
+    @Test
+    public void testApi() {
+        var registry = new MysqlRegistry<>(SystemData.SYSTEM, dataSource());
         var entityId = UniqueId.generate();
         var idempotencyKey = UUID.randomUUID().toString();
         registry.execute(new TestTransaction(entityId, idempotencyKey, "test", 111));
@@ -60,6 +80,526 @@ public class ApiTest {
         keyComponent = entity3.getComponent(SystemData.IdempotencyKey.class);
         assertTrue(keyComponent.isPresent());
         assertEquals(idempotencyKey, keyComponent.get().data().key);
+
+        var otherEntityId = UniqueId.generate();
+        registry.execute(new TestTransaction(otherEntityId, UUID.randomUUID().toString(), "other", 222));
+        var missingEntityId = UniqueId.generate();
+        var entities = registry.execute(Query.byEntityIds(List.of(entityId, otherEntityId, missingEntityId),
+                List.of(SystemData.TestData.class)));
+        assertEquals(2, entities.size());
+        assertFalse(entities.containsKey(missingEntityId));
+        assertEquals(111, entities.get(entityId).getComponent(SystemData.TestData.class).orElseThrow().data().inter);
+        assertEquals(222, entities.get(otherEntityId).getComponent(SystemData.TestData.class).orElseThrow().data().inter);
+        assertEquals(1, entities.get(otherEntityId).componentList().size());
+    }
+
+    @Test
+    public void testChangesSince() {
+        var registry = new MysqlRegistry<>(SystemData.SYSTEM, dataSource());
+        // tail to the current head of the feed, then write behind it
+        var head = 0L;
+        for (var b = registry.changesSince(head, List.of(), 1000); !b.changes().isEmpty(); b = registry.changesSince(head, List.of(), 1000)) {
+            head = b.cursor();
+        }
+        var keys = List.of(UUID.randomUUID().toString(), UUID.randomUUID().toString(), UUID.randomUUID().toString());
+        for (var key : keys) {
+            registry.execute(new TestTransaction(UniqueId.generate(), key, "feed", 1));
+        }
+
+        var seen = new ArrayList<String>();
+        var cursor = head;
+        ChangeBatch<SystemData> batch;
+        do {
+            batch = registry.changesSince(cursor, List.of(SystemData.IdempotencyKey.class), 2);
+            for (var change : batch.changes()) {
+                assertTrue(change.sequence() > cursor);
+                seen.add(((SystemData.IdempotencyKey) change.component().data()).key);
+            }
+            cursor = batch.cursor();
+        } while (!batch.changes().isEmpty());
+        assertEquals(keys, seen);
+    }
+
+    @Test
+    public void testLazyDecoding() {
+        var registry = MysqlRegistry.of(SystemData.SYSTEM, dataSource())
+                .withLazyDecoding(true)
+                .build();
+        var entityId = UniqueId.generate();
+        registry.execute(new TestTransaction(entityId, UUID.randomUUID().toString(), "lazy", 333));
+
+        var entity = registry.execute(Query.byEntityId(entityId)).orElseThrow();
+        var component = entity.getComponent(SystemData.TestData.class).orElseThrow();
+        assertFalse(component.isDecoded());
+        assertEquals(333, component.data().inter);
+        assertTrue(component.isDecoded());
+        assertFalse(entity.getComponent(SystemData.IdempotencyKey.class).orElseThrow().isDecoded());
+    }
+
+    @Test
+    public void testMetrics() {
+        var metrics = new HistogramRegistryMetrics();
+        var registry = MysqlRegistry.of(SystemData.SYSTEM, dataSource())
+                .withMetrics(RegistryMetrics.composite(metrics, new JfrRegistryMetrics()))
+                .build();
+        var key = UUID.randomUUID().toString();
+        registry.execute(new TestTransaction(UniqueId.generate(), key, "metrics", 1));
+        assertThrows(DuplicateUniqueDataException.class,
+                () -> registry.execute(new TestTransaction(UniqueId.generate(), key, "metrics", 2)));
+        registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(key))).orElseThrow();
+
+        var transactions = metrics.stats(RegistryMetrics.Operation.TRANSACTION);
+        assertEquals(2, transactions.latency().count());
+        assertEquals(2, transactions.rows());
+        assertEquals(1L, transactions.errors().get(DuplicateUniqueDataException.class.getName()));
+        var lookups = metrics.stats(RegistryMetrics.Operation.FIND_BY_UNIQUE_KEY);
+        assertEquals(1, lookups.latency().count());
+        assertEquals(2, lookups.rows());
+        assertTrue(lookups.payloadSize() > 0);
+        assertEquals(3, metrics.connectionAcquireStats().count());
+    }
+
+    @Test
+    public void testSession() {
+        var metrics = new HistogramRegistryMetrics();
+        var registry = MysqlRegistry.of(SystemData.SYSTEM, dataSource())
+                .withMetrics(metrics)
+                .build();
+        var entityId = UniqueId.generate();
+        var key = UUID.randomUUID().toString();
+        try (var session = registry.session()) {
+            assertTrue(session.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(key))).isEmpty());
+            assertTrue(session.execute(Query.byEntityId(entityId)).isEmpty());
+            session.execute(new TestTransaction(entityId, key, "session", 1));
+            // the failed write is rolled back and the session keeps working
+            assertThrows(DuplicateUniqueDataException.class,
+                    () -> session.execute(new TestTransaction(UniqueId.generate(), key, "duplicate", 2)));
+            var entity = session.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(key))).orElseThrow();
+            assertEquals("session", entity.getDataOrNull(SystemData.TestData.class).stringer);
+            assertEquals(1, session.execute(Query.byEntityIds(List.of(entityId))).size());
+        }
+        assertEquals(1, metrics.connectionAcquireStats().count());
+        assertEquals(entityId, registry.execute(Query.byEntityId(entityId)).orElseThrow().id());
+    }
+
+    @Test
+    public void testShardedRegistry() {
+        var first = new MysqlRegistry<>(SystemData.SYSTEM, dataSource());
+        var registry = new ShardedRegistry<>(SystemData.SYSTEM, ShardMap.of(List.of(first)));
+        var entityIds = new ArrayList<Id>();
+        var keys = new ArrayList<String>();
+        for (int i = 0; i < 16; i++) {
+            var entityId = UniqueId.generate();
+            var key = UUID.randomUUID().toString();
+            registry.execute(new TestTransaction(entityId, key, "sharded", i));
+            entityIds.add(entityId);
+            keys.add(key);
+        }
+
+        // the added shard is a database of its own with the same schema
+        registry.updateShardMap(registry.shardMap().withAddedShards(List.of(new MysqlRegistry<>(SystemData.SYSTEM, dataSource("ecs_shard2")))));
+        assertEquals(2, registry.shardMap().version());
+        assertEquals(16, registry.execute(Query.byEntityIds(entityIds)).size());
+        for (int i = 0; i < 16; i++) {
+            var entity = registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(keys.get(i)))).orElseThrow();
+            assertEquals(CompactId.of(entityIds.get(i)), CompactId.of(entity.id()));
+        }
+
+        assertThrows(DuplicateUniqueDataException.class,
+                () -> registry.execute(new TestTransaction(UniqueId.generate(), keys.getFirst(), "duplicate", 0)));
+        var released = UUID.randomUUID().toString();
+        // entities stay on the first shard, wherever the new map places them
+        for (var existing : entityIds) {
+            assertThrows(DuplicateComponentException.class,
+                    () -> registry.execute(new TestTransaction(existing, released, "released", 0)));
+            var current = registry.execute(Query.byEntityId(existing)).orElseThrow().componentOrNull(SystemData.TestData.class);
+            registry.execute(() -> List.of(current.nextVersion(UniqueId.generate(), new SystemData.TestData("moved", 1))));
+            var entity = first.execute(Query.byEntityId(existing)).orElseThrow();
+            assertEquals(2, entity.componentList().size());
+            assertEquals("moved", entity.getDataOrNull(SystemData.TestData.class).stringer);
+        }
+        registry.execute(new TestTransaction(UniqueId.generate(), released, "claimed", 1));
+
+        // replacing a unique component releases the claim of its old data
+        var rekeyed = entityIds.getFirst();
+        var oldKey = registry.execute(Query.byEntityId(rekeyed)).orElseThrow().componentOrNull(SystemData.IdempotencyKey.class);
+        registry.execute(() -> List.of(oldKey.nextVersion(UniqueId.generate(), new SystemData.IdempotencyKey(UUID.randomUUID().toString()))));
+        assertTrue(registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(keys.getFirst()))).isEmpty());
+        registry.execute(new TestTransaction(UniqueId.generate(), keys.getFirst(), "reclaimed", 2));
+
+        // the feed merges both shards, tail it to its head and write behind it
+        var cursor = 0L;
+        for (var b = registry.changesSince(cursor, List.of(), 1000); !b.changes().isEmpty(); b = registry.changesSince(cursor, List.of(), 1000)) {
+            cursor = b.cursor();
+        }
+        var fed = new HashSet<String>();
+        for (int i = 0; i < 8; i++) {
+            var key = UUID.randomUUID().toString();
+            registry.execute(new TestTransaction(UniqueId.generate(), key, "fed", i));
+            fed.add(key);
+        }
+        var seen = new HashSet<String>();
+        var previous = cursor;
+        ChangeBatch<SystemData> batch;
+        do {
+            batch = registry.changesSince(cursor, List.of(SystemData.IdempotencyKey.class), 3);
+            for (var change : batch.changes()) {
+                seen.add(((SystemData.IdempotencyKey) change.component().data()).key);
+            }
+            // every poll of one consumer updates the same cursor row
+            assertEquals(cursor >>> 20, batch.cursor() >>> 20);
+            if (batch.cursor() != cursor) {
+                previous = cursor;
+            }
+            cursor = batch.cursor();
+        } while (!batch.changes().isEmpty());
+        assertEquals(fed, seen);
+
+        // the cursor before the last progress can be repeated, older ones have expired
+        assertEquals(cursor, registry.changesSince(previous, List.of(SystemData.IdempotencyKey.class), 3).cursor());
+        var expired = cursor - 2;
+        assertThrows(IllegalArgumentException.class, () -> registry.changesSince(expired, List.of(), 3));
+    }
+
+    @Test
+    public void testReadYourWrites() {
+        // the primary doubles as replica here, which exercises the GTID wait and the fallback
+        var registry = MysqlRegistry.of(SystemData.SYSTEM, dataSource())
+                .withReplica(dataSource(), Duration.ofMillis(100))
+                .build();
+        var entityId = UniqueId.generate();
+        var key = UUID.randomUUID().toString();
+        var token = registry.executeAndGetToken(new TestTransaction(entityId, key, "replica", 1));
+
+        assertNotNull(token);
+        var entity = registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(key)), token).orElseThrow();
+        assertEquals(CompactId.of(entityId), CompactId.of(entity.id()));
+        assertTrue(registry.execute(Query.byEntityId(entityId), token).isPresent());
+        assertTrue(registry.execute(Query.byEntityId(entityId)).isPresent());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> MysqlRegistry.of(SystemData.SYSTEM, dataSource()).withReplica(dataSource(), Duration.ZERO));
+    }
+
+    @Test
+    public void testUnreachableReplica() {
+        var unreachable = new MysqlDataSource();
+        unreachable.setURL("jdbc:mysql://localhost:1/ecs?connectTimeout=500");
+        var registry = MysqlRegistry.of(SystemData.SYSTEM, dataSource())
+                .withReplica(unreachable, Duration.ofMillis(100))
+                .build();
+        var entityId = UniqueId.generate();
+        var token = registry.executeAndGetToken(new TestTransaction(entityId, UUID.randomUUID().toString(), "replica", 1));
+
+        // reads with and without a token fall back to the primary
+        assertTrue(registry.execute(Query.byEntityId(entityId), token).isPresent());
+        assertTrue(registry.execute(Query.byEntityId(entityId)).isPresent());
+        assertEquals(2, registry.replicaFallbackCount());
+    }
+
+    @Test
+    public void testSecondaryIndex() {
+        var byStringer = SecondaryIndex.<SystemData, SystemData.TestData>of("test_data_stringer", SystemData.TestData.class, SystemData.TestData::stringer);
+        var registry = MysqlRegistry.of(SystemData.SYSTEM, dataSource())
+                .withIndex(byStringer)
+                .build();
+        var stringer = UUID.randomUUID().toString();
+        var entityIds = new HashSet<CompactId>();
+        for (int i = 0; i < 5; i++) {
+            var entityId = UniqueId.generate();
+            registry.execute(new TestTransaction(entityId, UUID.randomUUID().toString(), stringer, i));
+            entityIds.add(entityId);
+        }
+        registry.execute(new TestTransaction(UniqueId.generate(), UUID.randomUUID().toString(), "other", 0));
+
+        var first = registry.execute(Query.byIndex(byStringer, stringer, 2));
+        assertEquals(2, first.entities().size());
+        assertTrue(first.hasNext());
+
+        var found = registry.stream(Query.byIndex(byStringer, stringer, 2, List.of(SystemData.IdempotencyKey.class)))
+                .peek(entity -> assertFalse(entity.hasComponent(SystemData.TestData.class)))
+                .map(entity -> CompactId.of(entity.id()))
+                .collect(Collectors.toSet());
+        assertEquals(entityIds, found);
+    }
+
+    @Test
+    public void testVersionedUpdate() {
+        var registry = new MysqlRegistry<>(SystemData.SYSTEM, dataSource());
+        var entityId = UniqueId.generate();
+        var key = UUID.randomUUID().toString();
+        registry.execute(new TestTransaction(entityId, key, "v0", 0));
+
+        var entity = registry.execute(Query.byEntityId(entityId)).orElseThrow();
+        var current = entity.componentOrNull(SystemData.TestData.class);
+        assertEquals(0, current.version());
+        registry.execute(() -> List.of(current.nextVersion(UniqueId.generate(), new SystemData.TestData("v1", 1))));
+        assertThrows(DuplicateComponentException.class,
+                () -> registry.execute(() -> List.of(current.nextVersion(UniqueId.generate(), new SystemData.TestData("lost", 2)))));
+
+        var updated = registry.execute(Query.byEntityId(entityId)).orElseThrow().getComponentOrNull(SystemData.TestData.class);
+        assertEquals(1, updated.version());
+        assertEquals("v1", updated.data().stringer);
+        Component<SystemData> skipped = new Component<>(UniqueId.generate(), entityId, new SystemData.TestData("skipped", 3), false, 5);
+        assertThrows(DuplicateComponentException.class, () -> registry.execute(() -> List.of(skipped)));
+
+        // a unique component can be replaced by one with the same data
+        var idempotencyKey = registry.execute(Query.byEntityId(entityId)).orElseThrow().componentOrNull(SystemData.IdempotencyKey.class);
+        registry.execute(() -> List.of(idempotencyKey.nextVersion(UniqueId.generate(), new SystemData.IdempotencyKey(key))));
+        var byKey = registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(key))).orElseThrow();
+        assertEquals(1, byKey.getComponentOrNull(SystemData.IdempotencyKey.class).version());
+
+        // replaced by a component that isn't unique, the data is free for another entity
+        Component<SystemData> plain = new Component<>(UniqueId.generate(), entityId, new SystemData.IdempotencyKey("plain-" + key), false, 2);
+        registry.execute(() -> List.of(plain));
+        assertTrue(registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(key))).isEmpty());
+        registry.execute(new TestTransaction(UniqueId.generate(), key, "reused", 4));
+    }
+
+    @Test
+    public void testSnapshots() {
+        var registry = MysqlRegistry.of(SystemData.SYSTEM, dataSource())
+                .withSnapshots(true)
+                .build();
+        var entityId = UniqueId.generate();
+        var key = UUID.randomUUID().toString();
+        registry.execute(new TestTransaction(entityId, key, "snapshot", 1));
+        var current = registry.execute(Query.byEntityId(entityId)).orElseThrow().componentOrNull(SystemData.TestData.class);
+        registry.execute(() -> List.of(current.nextVersion(UniqueId.generate(), new SystemData.TestData("patched", 2))));
+
+        var entity = registry.execute(Query.byEntityId(entityId)).orElseThrow();
+        assertEquals(2, entity.componentList().size());
+        assertEquals("patched", entity.getDataOrNull(SystemData.TestData.class).stringer);
+        assertEquals(1, entity.getComponentOrNull(SystemData.TestData.class).version());
+        var byKey = registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(key), List.of(SystemData.TestData.class))).orElseThrow();
+        assertEquals(1, byKey.componentList().size());
+        assertEquals(1, registry.execute(Query.byEntityIds(List.of(entityId))).size());
+
+        // written without snapshots, only visible through the snapshot table after a rebuild
+        var unsnapshotted = UniqueId.generate();
+        new MysqlRegistry<>(SystemData.SYSTEM, dataSource())
+                .execute(new TestTransaction(unsnapshotted, UUID.randomUUID().toString(), "rebuilt", 3));
+        assertTrue(registry.execute(Query.byEntityId(unsnapshotted)).isEmpty());
+        var rebuilt = new SnapshotRebuilder(registry, 100).rebuild(count -> {});
+        assertTrue(rebuilt >= 2);
+        assertEquals("rebuilt", registry.execute(Query.byEntityId(unsnapshotted)).orElseThrow().getDataOrNull(SystemData.TestData.class).stringer);
+        assertEquals("patched", registry.execute(Query.byEntityId(entityId)).orElseThrow().getDataOrNull(SystemData.TestData.class).stringer);
+    }
+
+    @Test
+    public void testUniqueKeyFilter() throws InterruptedException {
+        var existingKey = UUID.randomUUID().toString();
+        new MysqlRegistry<>(SystemData.SYSTEM, dataSource())
+                .execute(new TestTransaction(UniqueId.generate(), existingKey, "loaded", 1));
+
+        var registry = MysqlRegistry.of(SystemData.SYSTEM, dataSource())
+                .withUniqueKeyFilter(100_000, 0.001, Duration.ofMillis(500))
+                .build();
+        assertTrue(registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(existingKey))).isPresent());
+        assertTrue(registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(UUID.randomUUID().toString()))).isEmpty());
+
+        var writtenKey = UUID.randomUUID().toString();
+        registry.execute(new TestTransaction(UniqueId.generate(), writtenKey, "written", 2));
+        assertTrue(registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(writtenKey))).isPresent());
+
+        // a key another writer added after the load reaches the filter through the change feed, once the
+        // filter is older than its staleness bound
+        var otherWriterKey = UUID.randomUUID().toString();
+        new MysqlRegistry<>(SystemData.SYSTEM, dataSource())
+                .execute(new TestTransaction(UniqueId.generate(), otherWriterKey, "other writer", 3));
+        Thread.sleep(600);
+        assertTrue(registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(otherWriterKey))).isPresent());
+
+        var stats = registry.uniqueKeyFilterStats().orElseThrow();
+        assertEquals(4, stats.checks());
+        // only the miss right after the load skipped the database
+        assertEquals(1, stats.avoidedQueries());
+    }
+
+    @Test
+    public void testBinaryCodec() {
+        var registry = MysqlRegistry.of(SystemData.SYSTEM, dataSource())
+                .withCodec(new Codec())
+                .build();
+        var entityId = UniqueId.generate();
+        var key = UUID.randomUUID().toString();
+        registry.execute(new TestTransaction(entityId, key, "binary", 1));
+        var entity = registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(key))).orElseThrow();
+        assertEquals(entityId, entity.id());
+        assertEquals("binary", entity.getDataOrNull(SystemData.TestData.class).stringer);
+        assertThrows(DuplicateUniqueDataException.class,
+                () -> registry.execute(new TestTransaction(UniqueId.generate(), key, "duplicate", 2)));
+
+        // rows written as JSON stay readable next to binary ones
+        var jsonEntityId = UniqueId.generate();
+        new MysqlRegistry<>(SystemData.SYSTEM, dataSource())
+                .execute(new TestTransaction(jsonEntityId, UUID.randomUUID().toString(), "json", 3));
+        var entities = registry.execute(Query.byEntityIds(List.of(entityId, jsonEntityId)));
+        assertEquals("binary", entities.get(entityId).getDataOrNull(SystemData.TestData.class).stringer);
+        assertEquals("json", entities.get(jsonEntityId).getDataOrNull(SystemData.TestData.class).stringer);
+
+        var snapshotted = MysqlRegistry.of(SystemData.SYSTEM, dataSource())
+                .withCodec(new Codec())
+                .withSnapshots(true)
+                .build();
+        var snapshotEntityId = UniqueId.generate();
+        snapshotted.execute(new TestTransaction(snapshotEntityId, UUID.randomUUID().toString(), "snapshot", 4));
+        assertEquals(4, snapshotted.execute(Query.byEntityId(snapshotEntityId)).orElseThrow().getDataOrNull(SystemData.TestData.class).inter);
+    }
+
+    @Test
+    public void testBulkImport() {
+        var registry = new MysqlRegistry<>(SystemData.SYSTEM, dataSource());
+        var components = new ArrayList<Component<SystemData>>();
+        var entityIds = new ArrayList<Id>();
+        for (int i = 0; i < 1000; i++) {
+            var entityId = UniqueId.generate();
+            entityIds.add(entityId);
+            components.addAll(new TestTransaction(entityId, UUID.randomUUID().toString(), "imported", i).execute());
+        }
+        var name = "test-" + UUID.randomUUID();
+        var progress = new ArrayList<BulkImportProgress>();
+        var result = BulkImport.of(registry, name)
+                .withChunkSize(300)
+                .withParallelism(3)
+                .withProgressListener(progress::add)
+                .build()
+                .run(components.iterator());
+        assertEquals(2000, result.committedRows());
+        assertEquals(7, result.committedChunks());
+        assertEquals(7, progress.size());
+        assertEquals(2000, progress.getLast().committedRows());
+        assertEquals(1000, registry.execute(Query.byEntityIds(entityIds)).size());
+
+        // a second run of the same import finds every chunk committed
+        var rerun = BulkImport.of(registry, name)
+                .withChunkSize(300)
+                .build()
+                .run(components.iterator());
+        assertEquals(0, rerun.committedRows());
+        assertEquals(2000, rerun.skippedRows());
+    }
+
+    @Test
+    public void testBulkImportChunksWriteConcurrently() throws Exception {
+        var registry = new MysqlRegistry<>(SystemData.SYSTEM, dataSource());
+        var systemId = Byte.toUnsignedInt(SystemData.SYSTEM.id().value());
+        var components = new ArrayList<Component<SystemData>>();
+        for (int i = 0; i < 400; i++) {
+            components.addAll(new TestTransaction(UniqueId.generate(), UUID.randomUUID().toString(), "imported", i).execute());
+        }
+        try (var holder = dataSource().getConnection();
+             var observer = dataSource().getConnection()) {
+            // while another transaction holds the system's sequence counter, every chunk stops at its allocation
+            holder.setAutoCommit(false);
+            try (var stmt = holder.prepareStatement("""
+                    INSERT INTO component_sequence (system_id, last_sequence) VALUES (?, 0)
+                    ON DUPLICATE KEY UPDATE last_sequence = last_sequence""")) {
+                stmt.setInt(1, systemId);
+                stmt.executeUpdate();
+            }
+            var result = CompletableFuture.supplyAsync(() -> BulkImport.of(registry, "test-" + UUID.randomUUID())
+                    .withChunkSize(200)
+                    .withParallelism(4)
+                    .build()
+                    .run(components.iterator()));
+            // so does a plain write
+            var write = CompletableFuture.runAsync(
+                    () -> registry.execute(new TestTransaction(UniqueId.generate(), UUID.randomUUID().toString(), "write", 1)));
+
+            // all four chunks and the write get their rows written in the meantime, none waits for another to commit
+            observer.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+            var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            var provisional = 0L;
+            while (provisional < 802 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+                try (var stmt = observer.prepareStatement("SELECT COUNT(*) FROM component WHERE system_id = ? AND sequence < 0")) {
+                    stmt.setInt(1, systemId);
+                    try (var count = stmt.executeQuery()) {
+                        count.next();
+                        provisional = count.getLong(1);
+                    }
+                }
+            }
+            assertEquals(802, provisional);
+
+            holder.commit();
+            assertEquals(800, result.join().committedRows());
+            write.join();
+            try (var stmt = observer.prepareStatement("SELECT COUNT(*) FROM component WHERE system_id = ? AND sequence < 0")) {
+                stmt.setInt(1, systemId);
+                try (var count = stmt.executeQuery()) {
+                    count.next();
+                    assertEquals(0, count.getLong(1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGroupCommit() {
+        var registry = new MysqlRegistry<>(SystemData.SYSTEM, dataSource());
+        var duplicateKey = UUID.randomUUID().toString();
+        var entityIds = new ArrayList<Id>();
+        var futures = new ArrayList<CompletableFuture<Void>>();
+        try (var writer = new GroupCommitWriter<>(registry, 64, Duration.ofMillis(20))) {
+            for (int i = 0; i < 32; i++) {
+                var entityId = UniqueId.generate();
+                entityIds.add(entityId);
+                futures.add(writer.execute(new TestTransaction(entityId, UUID.randomUUID().toString(), "batch", i)));
+            }
+            futures.add(writer.execute(new TestTransaction(UniqueId.generate(), duplicateKey, "first", 1)));
+            futures.add(writer.execute(new TestTransaction(UniqueId.generate(), duplicateKey, "second", 2)));
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+            var failed = futures.stream().filter(CompletableFuture::isCompletedExceptionally).count();
+            assertEquals(1, failed);
+            var failure = assertThrows(CompletionException.class, () -> futures.getLast().join());
+            assertInstanceOf(DuplicateUniqueDataException.class, failure.getCause());
+        }
+
+        assertEquals(32, registry.execute(Query.byEntityIds(entityIds)).size());
+        var entity = registry.execute(Query.byUniqueKey(new SystemData.IdempotencyKey(duplicateKey))).orElseThrow();
+        assertEquals("first", entity.getComponent(SystemData.TestData.class).orElseThrow().data().stringer);
+    }
+
+    @Test
+    public void testMaintenance() {
+        var system = new ComponentSystem<>(new SystemId((byte) 3), new Mapper());
+        try (var maintenance = Maintenance.of(dataSource())
+                .withBatchSize(50)
+                .withPause(Duration.ZERO)
+                .build()) {
+            maintenance.register(system, RetentionPolicy.keepLatest(1));
+            var registry = new MysqlRegistry<>(system, dataSource());
+            var entityId = UniqueId.generate();
+            registry.execute(new TestTransaction(entityId, UUID.randomUUID().toString(), "v0", 0));
+            for (int i = 1; i <= 3; i++) {
+                var current = registry.execute(Query.byEntityId(entityId)).orElseThrow().componentOrNull(SystemData.TestData.class);
+                registry.execute(() -> List.of(current.nextVersion(UniqueId.generate(), new SystemData.TestData("v" + (current.version() + 1), 0))));
+            }
+
+            assertTrue(maintenance.prune(system) >= 3);
+            var versions = new ArrayList<Integer>();
+            var cursor = 0L;
+            ChangeBatch<SystemData> batch;
+            do {
+                batch = registry.changesSince(cursor, List.of(SystemData.TestData.class), 1000);
+                for (var change : batch.changes()) {
+                    if (change.component().entityId().equals(entityId)) {
+                        versions.add(change.component().version());
+                    }
+                }
+                cursor = batch.cursor();
+            } while (!batch.changes().isEmpty());
+            assertEquals(List.of(3), versions);
+            assertEquals(3, registry.execute(Query.byEntityId(entityId)).orElseThrow().getComponentOrNull(SystemData.TestData.class).version());
+
+            var stats = maintenance.storageStats();
+            assertTrue(stats.tables().stream().anyMatch(table -> table.name().equals("component")));
+            assertTrue(stats.partitions().stream().anyMatch(partition -> partition.name().equals("system3")));
+            assertTrue(stats.indexes().stream().anyMatch(index -> index.table().equals("component") && index.name().equals("PRIMARY")));
+        }
     }
 
     sealed interface SystemData {
@@ -124,6 +664,41 @@ public class ApiTest {
                     .map(t -> t.id)
                     .toList();
         }
+
+        @Override
+        public Class<? extends SystemData> resolveClass(int type) {
+            return SystemDataType.fromId(type).clazz;
+        }
+    }
+
+    // the same types as Mapper, TestData as its int followed by the UTF-8 string
+    static class Codec implements ComponentCodec<SystemData> {
+        @Override
+        public int type(SystemData data) {
+            return Mapper.SystemDataType.fromClass(data.getClass()).id;
+        }
+
+        @Override
+        public byte[] encode(SystemData data) {
+            return switch (data) {
+                case SystemData.TestData testData -> {
+                    var stringer = testData.stringer().getBytes(StandardCharsets.UTF_8);
+                    yield ByteBuffer.allocate(Integer.BYTES + stringer.length).putInt(testData.inter()).put(stringer).array();
+                }
+                case SystemData.IdempotencyKey key -> key.key().getBytes(StandardCharsets.UTF_8);
+            };
+        }
+
+        @Override
+        public SystemData decode(int type, ByteBuffer data) {
+            return switch (Mapper.SystemDataType.fromId(type)) {
+                case TEST_DATA -> {
+                    var inter = data.getInt();
+                    yield new SystemData.TestData(StandardCharsets.UTF_8.decode(data).toString(), inter);
+                }
+                case IDEMPOTENCY_KEY -> new SystemData.IdempotencyKey(StandardCharsets.UTF_8.decode(data).toString());
+            };
+        }
     }
 
     record TestTransaction(